@@ -0,0 +1,187 @@
+package fivecarddraw;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures Hub.sendToAll() fanning a message out to N clients, from the call
+ * until every client has received the message.
+ * <p>
+ * sendToAll uses in-memory connections, registered with the Hub the way a
+ * ConnectionToClient registers itself after its handshake. Each has the
+ * Hub's usual OutgoingQueue and a thread that takes messages from it, as a
+ * send thread does, but nothing is written anywhere. This covers encoding
+ * the message once with codec, the per-connection queues and the hand-off
+ * to each connection's thread, and nothing else.
+ * <p>
+ * sendToAllLoopback connects real Clients over the loopback interface, so it
+ * adds the sockets and serialization or decoding on both ends. With
+ * selectorThreads above 0, the Hub uses HubSelectorEngine instead of two
+ * threads per connection. HubSelectorEngine always needs a codec, so it uses
+ * one whatever codec says.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HubBenchmark {
+
+    /**
+     * A connection that only takes messages from its queue and counts the
+     * ones the benchmark sent.
+     */
+    private static class InMemoryConnection extends Hub.Connection {
+
+        private final int playerID;
+        private final AtomicLong received;
+        private final Thread thread;
+
+        InMemoryConnection(Hub hub, AtomicLong received) {
+            super(hub.newOutgoingQueue());
+            this.playerID = hub.nextPlayerID();
+            this.received = received;
+            thread = new Thread(this::run);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPlayer() {
+            return playerID;
+        }
+
+        void send(Object obj) {
+            outgoingMessages.offer(obj); // Never full, since the queue has no limit.
+        }
+
+        void close() {
+            thread.interrupt();
+        }
+
+        private void run() {
+            try {
+                while (true) {
+                    Object message = outgoingMessages.take();
+                    if (message instanceof Hub.EncodedMessage)
+                        message = ((Hub.EncodedMessage) message).message;
+                    if (message instanceof ForwardedMessage)
+                        received.incrementAndGet();
+                }
+            }
+            catch (InterruptedException e) {
+            }
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class InMemory {
+
+        @Param({ "1", "8", "64" })
+        public int clients;
+
+        @Param({ "false", "true" })
+        public boolean codec;
+
+        Hub hub;
+        final AtomicLong received = new AtomicLong();
+        long expected;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            ConnectionOptions options = new ConnectionOptions();
+            if (codec)
+                options.setCodec(new PokerMessageCodec());
+            hub = new Hub(0, options); // Listens on a free port, but nothing connects to it.
+            for (int i = 0; i < clients; i++)
+                hub.acceptConnection(new InMemoryConnection(hub, received));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            hub.shutDownServer();
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class Loopback {
+
+        @Param({ "1", "8", "64" })
+        public int clients;
+
+        @Param({ "0", "2" })
+        public int selectorThreads;
+
+        @Param({ "false", "true" })
+        public boolean codec;
+
+        Hub hub;
+        Client[] connections;
+        final AtomicLong received = new AtomicLong();
+        long expected;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException, InterruptedException {
+            int port;
+            try (ServerSocket probe = new ServerSocket(0)) {
+                port = probe.getLocalPort();
+            }
+            ConnectionOptions options = new ConnectionOptions();
+            options.setSelectorThreads(selectorThreads);
+            if (codec || selectorThreads > 0)
+                options.setCodec(new PokerMessageCodec());
+            hub = new Hub(port, options);
+            connections = new Client[clients];
+            for (int i = 0; i < clients; i++) {
+                connections[i] = new Client("localhost", port, options) {
+                    protected void messageReceived(Object message) {
+                        received.incrementAndGet();
+                    }
+                };
+            }
+            while (hub.getPlayerList().length < clients)
+                Thread.sleep(10);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            for (Client c : connections)
+                c.disconnect();
+            hub.shutDownServer();
+        }
+
+    }
+
+    @Benchmark
+    public void sendToAll(InMemory state) {
+        state.hub.sendToAll(new ForwardedMessage(0, "check"));
+        state.expected += state.clients;
+        while (state.received.get() < state.expected)
+            Thread.yield();
+    }
+
+    @Benchmark
+    public void sendToAllLoopback(Loopback state) {
+        state.hub.sendToAll(new ForwardedMessage(0, "check"));
+        state.expected += state.clients;
+        while (state.received.get() < state.expected)
+            Thread.yield();
+    }
+
+}
@@ -0,0 +1,54 @@
+package fivecarddraw;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures shuffling a deck and dealing from it, for the ten cards of a
+ * two-player deal and for the whole deck, with and without lazy shuffling.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PokerDeckBenchmark {
+
+    @Param({ "10", "52" })
+    public int cardsDealt;
+
+    @Param({ "false", "true" })
+    public boolean lazy;
+
+    private final PokerDeck deck = new PokerDeck();
+
+    @Setup
+    public void setup() {
+        deck.setLazyShuffle(lazy);
+    }
+
+    @Benchmark
+    public void shuffleAndDeal(Blackhole bh) {
+        deck.shuffle();
+        for (int i = 0; i < cardsDealt; i++)
+            bh.consume(deck.dealCard());
+    }
+
+    @Benchmark
+    public PokerDeck newDeck() {
+        return new PokerDeck();
+    }
+
+}
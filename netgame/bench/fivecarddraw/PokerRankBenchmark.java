@@ -0,0 +1,89 @@
+package fivecarddraw;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures ranking one five-card hand of each hand type, both through a new
+ * PokerRank object and directly with PokerEvaluator.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PokerRankBenchmark {
+
+    @Param({ "NOTHING", "PAIR", "TWO_PAIR", "TRIPLE", "STRAIGHT", "FLUSH", "FULL_HOUSE", "FOUR_OF_A_KIND",
+            "STRAIGHT_FLUSH", "ROYAL_FLUSH" })
+    public String handType;
+
+    private PokerCard[] hand;
+
+    @Setup
+    public void setup() {
+        switch (handType) {
+            case "NOTHING":
+                hand = hand(14, 0, 11, 1, 8, 2, 6, 3, 3, 0);
+                break;
+            case "PAIR":
+                hand = hand(9, 0, 9, 1, 13, 2, 7, 3, 2, 0);
+                break;
+            case "TWO_PAIR":
+                hand = hand(12, 0, 12, 1, 5, 2, 5, 3, 10, 0);
+                break;
+            case "TRIPLE":
+                hand = hand(7, 0, 7, 1, 7, 2, 14, 3, 3, 0);
+                break;
+            case "STRAIGHT":
+                hand = hand(9, 0, 8, 1, 7, 2, 6, 3, 5, 0);
+                break;
+            case "FLUSH":
+                hand = hand(13, 1, 10, 1, 8, 1, 4, 1, 2, 1);
+                break;
+            case "FULL_HOUSE":
+                hand = hand(4, 0, 4, 1, 4, 2, 11, 3, 11, 0);
+                break;
+            case "FOUR_OF_A_KIND":
+                hand = hand(8, 0, 8, 1, 8, 2, 8, 3, 12, 0);
+                break;
+            case "STRAIGHT_FLUSH":
+                hand = hand(10, 2, 9, 2, 8, 2, 7, 2, 6, 2);
+                break;
+            case "ROYAL_FLUSH":
+                hand = hand(14, 3, 13, 3, 12, 3, 11, 3, 10, 3);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown hand type " + handType);
+        }
+    }
+
+    private static PokerCard[] hand(int... valuesAndSuits) {
+        PokerCard[] cards = new PokerCard[5];
+        for (int i = 0; i < 5; i++)
+            cards[i] = PokerCard.valueOf(valuesAndSuits[2 * i], valuesAndSuits[2 * i + 1]);
+        return cards;
+    }
+
+    @Benchmark
+    public int pokerRank() {
+        return new PokerRank(hand).getRank();
+    }
+
+    @Benchmark
+    public int evaluator() {
+        return PokerEvaluator.rank(hand);
+    }
+
+}
@@ -0,0 +1,85 @@
+package fivecarddraw;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures writing the messages that the Hub sends most often to a long-lived
+ * ObjectOutputStream, the way a ConnectionToClient writes them. Each call
+ * writes a new message object, as the game does. With the "autoreset" format,
+ * the stream is reset before each message, as Hub.setAutoreset(true) does;
+ * with "stream", the stream is only replaced at the start of each iteration,
+ * so class descriptors are written once and then referred to by handle. With
+ * "codec", each message is written as a frame by PokerMessageCodec.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    @Param({ "stream", "autoreset", "codec" })
+    public String format;
+
+    private final PokerCard[] hand = new PokerCard[5];
+    private final int[] players = { 1, 2 };
+    private ByteArrayOutputStream bytes;
+    private ObjectOutputStream out;
+    private final MessageFrames frames = new MessageFrames(new PokerMessageCodec());
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        PokerDeck deck = new PokerDeck();
+        deck.shuffle();
+        for (int i = 0; i < 5; i++)
+            hand[i] = deck.dealCard();
+        bytes = new ByteArrayOutputStream(1 << 16);
+        out = new ObjectOutputStream(bytes);
+    }
+
+    private int write(Object message) throws IOException {
+        if (format.equals("codec"))
+            frames.write(message, bytes);
+        else {
+            if (format.equals("autoreset"))
+                out.reset();
+            out.writeObject(message);
+            out.flush();
+        }
+        int size = bytes.size();
+        bytes.reset();
+        return size;
+    }
+
+    @Benchmark
+    public int gameState() throws IOException {
+        return write(new PokerGameState(hand, PokerGameState.BET_OR_FOLD, 990, 990, 20, 10));
+    }
+
+    @Benchmark
+    public int forwardedMessage() throws IOException {
+        return write(new ForwardedMessage(1, "fold"));
+    }
+
+    @Benchmark
+    public int statusMessage() throws IOException {
+        return write(new StatusMessage(2, true, players));
+    }
+
+}
@@ -1,11 +1,18 @@
 package fivecarddraw;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.Socket;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This abstract class represents a Client, or Player, that can connect to a
@@ -26,7 +33,16 @@ abstract public class Client {
      * a connection is made with the server
      */
     public Client(String hubHostName, int hubPort) throws IOException {
-        connection = new ConnectionToHub(hubHostName, hubPort);
+        this(hubHostName, hubPort, new ConnectionOptions());
+    }
+
+    /**
+     * a connection is made with the server, with its threads made by the
+     * thread factory in the options, messages sent by the codec in the
+     * options if it has one, and writes batched as the options say
+     */
+    public Client(String hubHostName, int hubPort, ConnectionOptions options) throws IOException {
+        connection = new ConnectionToHub(hubHostName, hubPort, options);
     }
 
     abstract protected void messageReceived(Object message);
@@ -129,6 +145,15 @@ abstract public class Client {
         return autoreset;
     }
 
+    /**
+     * Returns the average number of messages written to the hub each time the
+     * connection was flushed, or 0 if nothing has been sent.
+     */
+    public double getMessagesPerFlush() {
+        long f = connection.flushes.get();
+        return f == 0 ? 0 : (double) connection.messagesWritten.get() / f;
+    }
+
     private final ConnectionToHub connection; 
 
     private class ConnectionToHub {
@@ -137,19 +162,31 @@ abstract public class Client {
         private final Socket socket; // The socket that is connected to the server.
         private final ObjectInputStream in; // A stream for sending messages to the server.
         private final ObjectOutputStream out; // A stream for receiving messages from the server.
-        private final SendThread sendThread; // The thread that sends messages to the server.
-        private final ReceiveThread receiveThread; // The thread that receives messages from the server.
+        private final Thread sendThread; // The thread that sends messages to the server.
+        private final Thread receiveThread; // The thread that receives messages from the server.
         private final LinkedBlockingQueue<Object> outgoingMessages; // Queue of messages waiting to be transmitted.
+        private final MessageCodec codec; // If not null, used instead of in and out after the handshake.
+        private final int maxBatch; // Most messages written per flush.
+        private final long maxBatchDelay; // Nanoseconds to wait for more messages to fill a batch.
+        private final AtomicLong messagesWritten = new AtomicLong();
+        private final AtomicLong flushes = new AtomicLong();
+        private MessageFrames frames;
+        private DataInputStream frameIn;
+        private OutputStream frameOut;
         private volatile boolean closed; // This is set to true when the connection is closing.
+        private final ReentrantLock errorLock = new ReentrantLock();
         
         /**
          * Constructor opens the connection and sends the string "Hello Hub" to
          * the server. 
          */
-        ConnectionToHub(String host, int port) throws IOException {
+        ConnectionToHub(String host, int port, ConnectionOptions options) throws IOException {
             outgoingMessages = new LinkedBlockingQueue<Object>();
+            codec = options.getCodec();
+            maxBatch = options.getMaxBatch();
+            maxBatchDelay = TimeUnit.MICROSECONDS.toNanos(options.getMaxBatchDelay());
             socket = new Socket(host, port);
-            out = new ObjectOutputStream(socket.getOutputStream());
+            out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
             out.writeObject("Hello Hub");
             out.flush();
             in = new ObjectInputStream(socket.getInputStream());
@@ -160,8 +197,13 @@ abstract public class Client {
                 throw new IOException("Illegal response from server.");
             }
             extraHandshake(in, out); // Will throw an IOException if handshake doesn't succeed.
-            sendThread = new SendThread();
-            receiveThread = new ReceiveThread();
+            if (codec != null) {
+                frames = new MessageFrames(codec);
+                frameOut = new BufferedOutputStream(socket.getOutputStream());
+                frameIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            }
+            sendThread = options.getThreadFactory().newThread(new SendThread());
+            receiveThread = options.getThreadFactory().newThread(new ReceiveThread());
             sendThread.start();
             receiveThread.start();
         }
@@ -184,34 +226,82 @@ abstract public class Client {
          * This method is called by the threads that do input and output on the
          * connection when an IOException occurs.
          */
-        synchronized void closedByError(String message) {
-            if (!closed) {
-                connectionClosedByError(message);
-                close();
+        void closedByError(String message) {
+            errorLock.lock();
+            try {
+                if (!closed) {
+                    connectionClosedByError(message);
+                    close();
+                }
+            } finally {
+                errorLock.unlock();
+            }
+        }
+
+        /**
+         * Writes first, then the messages that are waiting in the queue, up to
+         * maxBatch of them, and flushes once. If the queue runs out, waits up
+         * to maxBatchDelay for more. Returns false if a DisconnectMessage was
+         * written, which is always the end of a batch.
+         */
+        private boolean writeBatch(Object first) throws IOException, InterruptedException {
+            long deadline = System.nanoTime() + maxBatchDelay;
+            int count = 0;
+            Object message = first;
+            while (true) {
+                if (message instanceof ResetSignal) {
+                    if (frames == null) {
+                        out.reset();
+                    }
+                } else {
+                    if (frames != null) {
+                        frames.write(message, frameOut);
+                    } else {
+                        if (autoreset) {
+                            out.reset();
+                        }
+                        out.writeObject(message);
+                    }
+                    count++;
+                    if (message instanceof DisconnectMessage) {
+                        break;
+                    }
+                }
+                if (count >= maxBatch) {
+                    break;
+                }
+                message = outgoingMessages.poll();
+                if (message == null) {
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0 || (message = outgoingMessages.poll(wait, TimeUnit.NANOSECONDS)) == null) {
+                        break;
+                    }
+                }
+            }
+            if (frames != null) {
+                frameOut.flush();
+            } else {
+                out.flush();
             }
+            if (count > 0) {
+                messagesWritten.addAndGet(count);
+                flushes.incrementAndGet();
+            }
+            return !(message instanceof DisconnectMessage);
         }
 
         /**
          * This class defines a thread that sends messages to the Hub.
          */
-        private class SendThread extends Thread {
+        private class SendThread implements Runnable {
 
             public void run() {
                 System.out.println("Client send thread started.");
                 try {
                     while (!closed) {
                         Object message = outgoingMessages.take();
-                        if (message instanceof ResetSignal) {
-                            out.reset();
-                        } else {
-                            if (autoreset) {
-                                out.reset();
-                            }
-                            out.writeObject(message);
-                            out.flush();
-                            if (message instanceof DisconnectMessage) {
-                                close();
-                            }
+                        if (!writeBatch(message)) {
+                            close();
                         }
                     }
                 } catch (IOException e) {
@@ -234,13 +324,13 @@ abstract public class Client {
         /**
          * This class defines a thread that reads messages from the Hub.
          */
-        private class ReceiveThread extends Thread {
+        private class ReceiveThread implements Runnable {
 
             public void run() {
                 System.out.println("Client receive thread started.");
                 try {
                     while (!closed) {
-                        Object obj = in.readObject();
+                        Object obj = frames != null ? MessageFrames.read(codec, frameIn) : in.readObject();
                         if (obj instanceof DisconnectMessage) {
                             close();
                             serverShutdown(((DisconnectMessage) obj).message);
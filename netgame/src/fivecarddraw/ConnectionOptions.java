@@ -0,0 +1,258 @@
+package fivecarddraw;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Settings for how a Hub or a Client handles its connections. The defaults
+ * give the original behavior, in which each connection has its own send and
+ * receive threads. Settings that only apply to a Hub are ignored by a Client.
+ */
+public class ConnectionOptions {
+
+    /**
+     * How the thread that handles an InboundRing waits for messages.
+     * BUSY_SPIN has the lowest latency but keeps a processor busy all the
+     * time, so it only makes sense when there are more processors than busy
+     * threads; YIELD lets other threads run in between; PARK uses no
+     * processor time while idle, at the cost of a wake-up when a message
+     * arrives.
+     */
+    public enum WaitStrategy {
+        BUSY_SPIN, YIELD, PARK
+    }
+
+    /**
+     * What a Hub does with a message for a client whose outgoing queue is
+     * full. DROP_OLDEST drops the oldest queued message. COALESCE first
+     * drops the queued messages that the new one supersedes, as decided by
+     * Hub.supersedes(), and drops the oldest one if there are none.
+     * DISCONNECT drops the oldest one as well, but closes the connection once
+     * the queue has been full for the slow client timeout.
+     */
+    public enum SlowClientPolicy {
+        DROP_OLDEST, COALESCE, DISCONNECT
+    }
+
+    private int selectorThreads = 0;
+    private int workerThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private ThreadFactory threadFactory = Thread::new;
+    private MessageCodec codec;
+    private int maxBatch = 64;
+    private int maxBatchDelay = 0;
+    private int messageShards = 1;
+    private int inboundRingSize = 0;
+    private int outgoingQueueLimit = 0;
+    private SlowClientPolicy slowClientPolicy = SlowClientPolicy.DROP_OLDEST;
+    private int slowClientTimeout = 10;
+    private WaitStrategy waitStrategy = WaitStrategy.PARK;
+
+    /**
+     * Returns the number of selector threads, or 0 if each connection gets
+     * its own threads.
+     */
+    public int getSelectorThreads() {
+        return selectorThreads;
+    }
+
+    /**
+     * Sets the number of threads that run Selector loops for a Hub. If this is
+     * more than 0, the Hub uses non-blocking channels, and the number of
+     * threads no longer grows with the number of connections. This needs a
+     * codec, so that a message is only decoded once all of it has arrived.
+     * The default is 0, for two threads per connection.
+     */
+    public void setSelectorThreads(int count) {
+        if (count < 0)
+            throw new IllegalArgumentException("The number of selector threads can't be negative.");
+        selectorThreads = count;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Sets the number of threads that decode and encode messages and run
+     * handshakes for the selector threads. A worker only starts on data that
+     * has all arrived, so slow clients do not hold workers. The default is the
+     * number of processors, but at least 2.
+     */
+    public void setWorkerThreads(int count) {
+        if (count < 1)
+            throw new IllegalArgumentException("There must be at least one worker thread.");
+        workerThreads = count;
+    }
+
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Sets the factory that makes the threads of a Hub that does not use
+     * selector threads, and of a Client: the thread that accepts connections,
+     * the thread that calls messageReceived(), and the send and receive
+     * threads of each connection. On a Java runtime with virtual threads,
+     * Thread.ofVirtual().factory() makes them virtual threads, so that idle
+     * connections cost little more than their sockets. For that reason the
+     * locks these threads may block while holding are ReentrantLocks rather
+     * than synchronized blocks, which would pin a virtual thread to its
+     * carrier thread. The default factory makes ordinary platform threads.
+     */
+    public void setThreadFactory(ThreadFactory factory) {
+        if (factory == null)
+            throw new IllegalArgumentException("The thread factory can't be null.");
+        threadFactory = factory;
+    }
+
+    /**
+     * Returns the codec for messages, or null if messages are sent with one
+     * ObjectOutputStream for the whole connection.
+     */
+    public MessageCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the codec used for messages once the handshake is over. With a
+     * codec, every message is sent as a length-prefixed frame, so it can be
+     * read without blocking, and autoreset and ResetSignal have no effect. The
+     * Hub and all of its Clients must use the same codec, or all use none,
+     * which is the default.
+     */
+    public void setCodec(MessageCodec codec) {
+        this.codec = codec;
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    /**
+     * Sets the largest number of queued messages that a connection writes
+     * before it flushes its output. Messages that are already waiting when a
+     * connection sends are written together and flushed once, so a burst of
+     * messages costs one system call and often one TCP segment. The default
+     * is 64. A value of 1 flushes after every message.
+     */
+    public void setMaxBatch(int count) {
+        if (count < 1)
+            throw new IllegalArgumentException("The batch size must be at least 1.");
+        maxBatch = count;
+    }
+
+    public int getMaxBatchDelay() {
+        return maxBatchDelay;
+    }
+
+    /**
+     * Sets how many microseconds a send thread waits for more messages once
+     * its queue is empty, before it flushes a batch that is not yet full. The
+     * default is 0, so a batch holds only the messages that were already
+     * queued and nothing is delayed. The selector threads of a Hub never
+     * wait, and ignore this setting.
+     */
+    public void setMaxBatchDelay(int micros) {
+        if (micros < 0)
+            throw new IllegalArgumentException("The batch delay can't be negative.");
+        maxBatchDelay = micros;
+    }
+
+    public int getMessageShards() {
+        return messageShards;
+    }
+
+    /**
+     * Sets the number of threads that handle the messages a Hub receives.
+     * Each message goes to the thread chosen by Hub.getShardKey() for its
+     * sender, so the messages for one key, such as one table, are handled in
+     * order on one thread while other keys are handled in parallel. The
+     * default is 1, which handles every message on the same thread.
+     */
+    public void setMessageShards(int count) {
+        if (count < 1)
+            throw new IllegalArgumentException("There must be at least one message shard.");
+        messageShards = count;
+    }
+
+    public int getInboundRingSize() {
+        return inboundRingSize;
+    }
+
+    /**
+     * Sets the size of a preallocated ring of envelopes that carries each
+     * shard's incoming messages, a power of 2. With a ring, passing a
+     * message to the thread that handles it allocates nothing and takes no
+     * lock. While the ring is full, the threads that receive messages wait,
+     * which are the receive threads of the connections or, with selector
+     * threads, the workers; either way the Hub stops reading from those
+     * clients until there is room. The default is 0, for an unbounded
+     * LinkedBlockingQueue.
+     */
+    public void setInboundRingSize(int size) {
+        if (size != 0 && (size < 2 || Integer.bitCount(size) != 1))
+            throw new IllegalArgumentException("The ring size must be 0 or a power of 2.");
+        inboundRingSize = size;
+    }
+
+    public int getOutgoingQueueLimit() {
+        return outgoingQueueLimit;
+    }
+
+    /**
+     * Sets the number of messages that can wait to be sent to one client of
+     * a Hub. When a message arrives for a full queue, the slow client policy
+     * decides what happens. Control messages, as decided by Hub.isControl(),
+     * are queued apart from the others, ahead of them, with a limit of their
+     * own of the same size; since they are never dropped, a client with that
+     * many of them waiting is disconnected. The default is 0, for no limit.
+     */
+    public void setOutgoingQueueLimit(int limit) {
+        if (limit < 0)
+            throw new IllegalArgumentException("The queue limit can't be negative.");
+        outgoingQueueLimit = limit;
+    }
+
+    public SlowClientPolicy getSlowClientPolicy() {
+        return slowClientPolicy;
+    }
+
+    /**
+     * Sets what happens when a message arrives for a full outgoing queue. The
+     * default is DROP_OLDEST. This has no effect without a queue limit.
+     */
+    public void setSlowClientPolicy(SlowClientPolicy policy) {
+        if (policy == null)
+            throw new IllegalArgumentException("The slow client policy can't be null.");
+        slowClientPolicy = policy;
+    }
+
+    public int getSlowClientTimeout() {
+        return slowClientTimeout;
+    }
+
+    /**
+     * Sets the number of seconds that a client's outgoing queue can stay
+     * full before the DISCONNECT policy closes the connection. The default is
+     * 10.
+     */
+    public void setSlowClientTimeout(int seconds) {
+        if (seconds < 0)
+            throw new IllegalArgumentException("The timeout can't be negative.");
+        slowClientTimeout = seconds;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * Sets how the threads of inbound rings wait for messages. The default is
+     * PARK. This has no effect without a ring.
+     */
+    public void setWaitStrategy(WaitStrategy strategy) {
+        if (strategy == null)
+            throw new IllegalArgumentException("The wait strategy can't be null.");
+        waitStrategy = strategy;
+    }
+
+}
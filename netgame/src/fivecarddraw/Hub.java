@@ -3,44 +3,84 @@ package fivecarddraw;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.TreeMap;
-import java.util.concurrent.BlockingQueue;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 public class Hub{
     
-    private TreeMap<Integer, ConnectionToClient> playerConnections;
-    private LinkedBlockingQueue<Message> incomingMessages;
+    private ConcurrentHashMap<Integer, Connection> playerConnections;
+    private volatile Connection[] connections = new Connection[0]; // Copy of playerConnections, in order of ID.
+    private volatile int[] players = new int[0]; // Their IDs.
+    private final Shard[] shards; // Each has a queue of incoming messages and a thread that handles them.
     private volatile boolean autoreset;
     private ServerSocket serverSocket;  
     private Thread serverThread; // Accepts connections on serverSocket.
+    private HubSelectorEngine selectorEngine; // Used instead of serverSocket and its threads, if not null.
     volatile private boolean shutdown;   
-    private int nextClientID = 1;  
+    private final AtomicInteger nextClientID = new AtomicInteger(1);
+    private final ThreadFactory threadFactory; // Makes the threads of the Hub and of each connection.
+    private final MessageCodec codec; // If not null, messages after the handshake are sent as frames by this codec.
+    private final int maxBatch; // Most messages written by a connection per flush.
+    private final long maxBatchDelay; // Nanoseconds a send thread waits to fill a batch.
+    private final int outgoingQueueLimit; // Most messages waiting for each connection, or 0 for no limit.
+    private final ConnectionOptions.SlowClientPolicy slowClientPolicy;
+    private final long slowClientTimeout; // Nanoseconds a connection's queue may stay full, with DISCONNECT.
+    
+    /**
+     * Held while a connection is added to or removed from playerConnections,
+     * so that the copies in connections and players, and the StatusMessages
+     * sent about the change, are in the same order as the changes. Sending
+     * and looking up connections do not take it, and neither do the
+     * protected methods, which are called by the shard threads. Nothing that
+     * holds it waits for room in an InboundRing, since a shard thread may be
+     * waiting for it; notices are queued with queueNotice().
+     */
+    private final ReentrantLock lock = new ReentrantLock();
    
     public Hub(int port) throws IOException {
-        playerConnections = new TreeMap<Integer, ConnectionToClient>();
-        incomingMessages = new LinkedBlockingQueue<Message>();
-        serverSocket = new ServerSocket(port);
+        this(port, new ConnectionOptions());
+    }
+    
+    /**
+     * Creates a Hub listening on a port, with connections handled as the
+     * options say: by two threads for each connection, or by a small number
+     * of selector threads shared by all of them.
+     *
+     * @throws IllegalArgumentException if the options ask for selector
+     *    threads but have no codec.
+     */
+    public Hub(int port, ConnectionOptions options) throws IOException {
+        if (options.getSelectorThreads() > 0 && options.getCodec() == null)
+            throw new IllegalArgumentException("A Hub with selector threads needs a codec.");
+        playerConnections = new ConcurrentHashMap<Integer, Connection>();
+        threadFactory = options.getThreadFactory();
+        shards = new Shard[options.getMessageShards()];
+        for (int i = 0; i < shards.length; i++)
+            shards[i] = new Shard(options);
+        codec = options.getCodec();
+        maxBatch = options.getMaxBatch();
+        maxBatchDelay = TimeUnit.MICROSECONDS.toNanos(options.getMaxBatchDelay());
+        outgoingQueueLimit = options.getOutgoingQueueLimit();
+        slowClientPolicy = options.getSlowClientPolicy();
+        slowClientTimeout = TimeUnit.SECONDS.toNanos(options.getSlowClientTimeout());
+        if (options.getSelectorThreads() > 0) {
+            selectorEngine = new HubSelectorEngine(this, options);
+            selectorEngine.listen(port);
+        }
+        else {
+            serverSocket = new ServerSocket(port);
+            serverThread = threadFactory.newThread(new ServerThread());
+            serverThread.start();
+        }
         System.out.println("Listening for client connections on port " + port);
-        serverThread = new ServerThread();
-        serverThread.start();
-        Thread readerThread = new Thread(){
-            public void run() {
-               while (true) {
-                   try {
-                       Message msg = incomingMessages.take();
-                       messageReceived(msg.playerConnection, msg.message);
-                   }
-                   catch (Exception e) {
-                       System.out.println("Exception while handling received message:");
-                       e.printStackTrace();
-                   }
-               }
-           }
-        };
-        readerThread.setDaemon(true);
-        readerThread.start();
     }
     
     protected void messageReceived(int playerID, Object message) {
@@ -61,23 +101,66 @@ public class Hub{
                                         ObjectOutputStream out) throws IOException {
     }
     
+    /**
+     * Returns the key that decides which shard thread handles the messages
+     * from a player, and the calls to playerConnected() and
+     * playerDisconnected() for that player. Everything for the same key is
+     * handled by the same thread, in the order it arrived, so a Hub that runs
+     * several tables can return the table of the player, and the code for a
+     * table never runs on two threads at once. This is called by the threads
+     * that receive messages, so it must be safe to call from any thread, and
+     * a player's key should not change while messages from the player may be
+     * waiting. The method in this class returns 0, so all messages are
+     * handled by one thread, as they are when there is only one shard.
+     */
+    protected int getShardKey(int playerID) {
+        return 0;
+    }
+    
+    /**
+     * Returns true if a message is a control message, which is sent ahead of
+     * any other messages that are waiting for the same client, and is never
+     * dropped from a full outgoing queue. The method in this class returns
+     * true for the messages that the Hub itself uses to manage connections:
+     * DisconnectMessage, StatusMessage and ResetSignal. A subclass can add
+     * its own, such as heartbeats. It is called by threads that send
+     * messages, so it must be safe to call from any thread.
+     */
+    protected boolean isControl(Object message) {
+        return message instanceof DisconnectMessage || message instanceof StatusMessage
+                || message instanceof ResetSignal;
+    }
+    
+    /**
+     * Returns true if a message makes an older one that is still waiting to
+     * be sent to the same client useless, so that the COALESCE policy can drop
+     * the older one when the queue is full. The method in this class returns
+     * false. It must be safe to call from any thread.
+     */
+    protected boolean supersedes(Object newer, Object older) {
+        return false;
+    }
+    
     /**
      * Gets the ID numbers of the connected clients.
      */
-    synchronized public int[] getPlayerList() {
-        int[] players = new int[playerConnections.size()];
-        int i = 0;
-        for (int p : playerConnections.keySet())
-            players[i++] = p;
-        return players;
+    public int[] getPlayerList() {
+        return players.clone();
     }
     
     // disconnects the client 
     
     public void shutdownServerSocket() {
+        if (selectorEngine != null) {
+            if (selectorEngine.isListening()) {
+                clearIncomingMessages();
+                selectorEngine.stopListening();
+            }
+            return;
+        }
         if (serverThread == null)
             return;
-        incomingMessages.clear();
+        clearIncomingMessages();
         shutdown = true;
         try {
             serverSocket.close();
@@ -89,11 +172,17 @@ public class Hub{
     }
     
     public void restartServer(int port) throws IOException {
+        if (selectorEngine != null) {
+            if (selectorEngine.isListening())
+                throw new IllegalStateException("Server is already listening for connections.");
+            selectorEngine.listen(port);
+            return;
+        }
         if (serverThread != null && serverThread.isAlive())
             throw new IllegalStateException("Server is already listening for connections.");
         shutdown = false;
         serverSocket = new ServerSocket(port);
-        serverThread = new ServerThread();
+        serverThread = threadFactory.newThread(new ServerThread());
         serverThread.start();
     }
     
@@ -107,33 +196,43 @@ public class Hub{
         }
         catch (InterruptedException e) {
         }
-        for (ConnectionToClient pc : playerConnections.values())
+        for (Connection pc : connections)
             pc.close();
     }
     
     
     /**
-     * Sends message objects to all clients
+     * Sends message objects to all clients. If the Hub has a codec, the
+     * message is encoded once, and every connection writes the same bytes.
      */
-    synchronized public void sendToAll(Object message) {
+    public void sendToAll(Object message) {
         if (message == null)
             throw new IllegalArgumentException("Null cannot be sent as a message.");
         if ( ! (message instanceof Serializable) )
             throw new IllegalArgumentException("Messages must implement the Serializable interface.");
-        for (ConnectionToClient pc : playerConnections.values())
-            pc.send(message);
+        Object queued = message;
+        if (codec != null && !(message instanceof DisconnectMessage)) {
+            try {
+                queued = new EncodedMessage(message, MessageFrames.frameOf(codec, message));
+            }
+            catch (IOException e) {
+                throw new IllegalArgumentException("Message can't be encoded: " + e);
+            }
+        }
+        for (Connection pc : connections)
+            pc.send(queued);
     }
     
     
     /**
      * Sends message objects to one client
      */
-    synchronized public boolean sendToOne(int recipientID, Object message) {
+    public boolean sendToOne(int recipientID, Object message) {
         if (message == null)
             throw new IllegalArgumentException("Null cannot be sent as a message.");
         if ( ! (message instanceof Serializable) )
             throw new IllegalArgumentException("Messages must implement the Serializable interface.");
-        ConnectionToClient pc = playerConnections.get(recipientID);
+        Connection pc = playerConnections.get(recipientID);
         if (pc == null)
             return false;
         else {
@@ -144,10 +243,15 @@ public class Hub{
     
     public void resetOutput() {
         ResetSignal rs = new ResetSignal();
-        for (ConnectionToClient pc : playerConnections.values())
+        for (Connection pc : connections)
             pc.send(rs); // A ResetSignal in the output stream is seen as a signal to reset.
     }
     
+    /**
+     * Sets whether the output stream of each connection is reset before each
+     * message. This has no effect when the Hub uses a MessageCodec, since then
+     * each message is written on its own.
+     */
     public void setAutoreset(boolean auto) {
         autoreset = auto;
     }
@@ -156,46 +260,307 @@ public class Hub{
         return autoreset;
     }
     
-    synchronized private void messageReceived(ConnectionToClient fromConnection, Object message) {
-              // Note: DisconnectMessage is handled in the ConnectionToClient class.
-        int sender = fromConnection.getPlayer();
-        messageReceived(sender,message);
+    MessageCodec getCodec() {
+        return codec;
     }
     
+    int getMaxBatch() {
+        return maxBatch;
+    }
     
-    synchronized private void acceptConnection(ConnectionToClient newConnection) {
-        int ID = newConnection.getPlayer();
-        playerConnections.put(ID,newConnection);
-        StatusMessage sm = new StatusMessage(ID,true,getPlayerList());
-        sendToAll(sm);
-        playerConnected(ID);
-        System.out.println("Connection accepted from client number " + ID);
+    /**
+     * Returns the average number of messages written to a client each time
+     * its connection was flushed, or 0 if there is no such client or nothing
+     * has been sent to it.
+     */
+    public double getMessagesPerFlush(int playerID) {
+        Connection pc = playerConnections.get(playerID);
+        return pc == null ? 0 : pc.getMessagesPerFlush();
     }
     
-    synchronized private void clientDisconnected(int playerID) {
-        if (playerConnections.containsKey(playerID)) {
-            playerConnections.remove(playerID);
-            StatusMessage sm = new StatusMessage(playerID,false,getPlayerList());
+    /**
+     * Returns the number of messages waiting to be sent to a client, or 0 if
+     * there is no such client.
+     */
+    public int getOutgoingQueueDepth(int playerID) {
+        Connection pc = playerConnections.get(playerID);
+        return pc == null ? 0 : pc.outgoingMessages.size();
+    }
+    
+    /**
+     * Returns the number of messages for a client that were dropped because
+     * its outgoing queue was full, or 0 if there is no such client.
+     */
+    public long getDroppedMessages(int playerID) {
+        Connection pc = playerConnections.get(playerID);
+        return pc == null ? 0 : pc.outgoingMessages.getDropped();
+    }
+    
+    OutgoingQueue newOutgoingQueue() {
+        return new OutgoingQueue(this, outgoingQueueLimit, slowClientPolicy, slowClientTimeout);
+    }
+    
+    int nextPlayerID() {
+        return nextClientID.getAndIncrement();
+    }
+    
+    /**
+     * Queues a message from a client for the thread that calls messageReceived().
+     * Note: DisconnectMessage is handled by the connection itself.
+     */
+    void queueIncoming(Connection fromConnection, Object message) throws InterruptedException {
+        queueIncoming(Message.RECEIVED, fromConnection.getPlayer(), message);
+    }
+    
+    private void queueIncoming(int kind, int playerID, Object message) {
+        shardOf(playerID).add(kind, playerID, message);
+    }
+    
+    /**
+     * Queues a notice that a player has connected or disconnected. Unlike
+     * queueIncoming(), this never waits for room in a full InboundRing, so it
+     * can be called with lock held, and by a shard thread, which is the only
+     * thread that can make room in its own ring.
+     */
+    private void queueNotice(int kind, int playerID) {
+        shardOf(playerID).addNotice(kind, playerID);
+    }
+    
+    private Shard shardOf(int playerID) {
+        return shards[shards.length == 1 ? 0 : Math.floorMod(getShardKey(playerID), shards.length)];
+    }
+    
+    /**
+     * Discards the messages from clients that have not been handled yet, but
+     * not the notices of players connecting and disconnecting.
+     */
+    private void clearIncomingMessages() {
+        for (Shard shard : shards)
+            shard.clear();
+    }
+    
+    /**
+     * Rebuilds connections and players from playerConnections. Called with
+     * lock held.
+     */
+    private void updateSnapshot() {
+        Connection[] list = playerConnections.values().toArray(new Connection[0]);
+        Arrays.sort(list, Comparator.comparingInt(Connection::getPlayer));
+        int[] ids = new int[list.length];
+        for (int i = 0; i < list.length; i++)
+            ids[i] = list[i].getPlayer();
+        connections = list;
+        players = ids;
+    }
+    
+    void acceptConnection(Connection newConnection) {
+        lock.lock();
+        try {
+            int ID = newConnection.getPlayer();
+            playerConnections.put(ID,newConnection);
+            updateSnapshot();
+            StatusMessage sm = new StatusMessage(ID,true,getPlayerList());
             sendToAll(sm);
-            playerDisconnected(playerID);
-            System.out.println("Connection with client number " + playerID + " closed by DisconnectMessage from client.");
+            queueNotice(Message.CONNECTED, ID);
+            System.out.println("Connection accepted from client number " + ID);
+        }
+        finally {
+            lock.unlock();
         }
     }
     
-    synchronized private void connectionToClientClosedWithError( ConnectionToClient playerConnection, String message ) {
-        int ID = playerConnection.getPlayer();
-        if (playerConnections.remove(ID) != null) {
-            StatusMessage sm = new StatusMessage(ID,false,getPlayerList());
-            sendToAll(sm);
+    void clientDisconnected(int playerID) {
+        lock.lock();
+        try {
+            if (playerConnections.remove(playerID) != null) {
+                updateSnapshot();
+                StatusMessage sm = new StatusMessage(playerID,false,getPlayerList());
+                sendToAll(sm);
+                queueNotice(Message.DISCONNECTED, playerID);
+                System.out.println("Connection with client number " + playerID + " closed by DisconnectMessage from client.");
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
     
-    private class Message {
-        ConnectionToClient playerConnection;
+    /**
+     * Removes a connection that is being closed because its client is not
+     * reading its messages. Unlike a connection lost to an error, this is
+     * the Hub's own decision to drop the player, so playerDisconnected() is
+     * called for it.
+     */
+    void slowClientDisconnected(Connection playerConnection) {
+        lock.lock();
+        try {
+            int ID = playerConnection.getPlayer();
+            if (playerConnections.remove(ID, playerConnection)) {
+                updateSnapshot();
+                StatusMessage sm = new StatusMessage(ID,false,getPlayerList());
+                sendToAll(sm);
+                queueNotice(Message.DISCONNECTED, ID); // This may be running on the shard thread.
+                System.out.println("Connection with client number " + ID + " closed: outgoing queue stayed full.");
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+    
+    void connectionToClientClosedWithError( Connection playerConnection, String message ) {
+        lock.lock();
+        try {
+            int ID = playerConnection.getPlayer();
+            if (playerConnections.remove(ID, playerConnection)) {
+                updateSnapshot();
+                StatusMessage sm = new StatusMessage(ID,false,getPlayerList());
+                sendToAll(sm);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * A queue of messages from clients and the thread that handles them, by
+     * calling the protected methods one at a time. The queue is an
+     * InboundRing if the options give a ring size, and otherwise a
+     * LinkedBlockingQueue of new Message objects.
+     */
+    private class Shard {
+        
+        private final LinkedBlockingQueue<Message> incomingMessages;
+        private final InboundRing ring;
+        
+        Shard(ConnectionOptions options) {
+            if (options.getInboundRingSize() > 0) {
+                incomingMessages = null;
+                ring = new InboundRing(options.getInboundRingSize(), options.getWaitStrategy(),
+                        threadFactory, Hub.this::handle);
+                return;
+            }
+            incomingMessages = new LinkedBlockingQueue<Message>();
+            ring = null;
+            Thread readerThread = threadFactory.newThread(() -> {
+                while (true) {
+                    try {
+                        Message msg = incomingMessages.take();
+                        handle(msg.kind, msg.playerID, msg.message);
+                    }
+                    catch (Exception e) {
+                        System.out.println("Exception while handling received message:");
+                        e.printStackTrace();
+                    }
+                }
+            });
+            readerThread.setDaemon(true);
+            readerThread.start();
+        }
+        
+        void add(int kind, int playerID, Object message) {
+            if (ring != null) {
+                ring.publish(kind, playerID, message);
+                return;
+            }
+            Message msg = new Message();
+            msg.kind = kind;
+            msg.playerID = playerID;
+            msg.message = message;
+            incomingMessages.add(msg);
+        }
+        
+        /**
+         * Adds an entry without waiting, even if the ring is full.
+         */
+        void addNotice(int kind, int playerID) {
+            if (ring != null)
+                ring.publishAside(kind, playerID, null);
+            else
+                add(kind, playerID, null);
+        }
+        
+        void clear() {
+            if (ring != null)
+                ring.discardPending(Message.RECEIVED);
+            else
+                incomingMessages.removeIf(msg -> msg.kind == Message.RECEIVED);
+        }
+    }
+    
+    private void handle(int kind, int playerID, Object message) {
+        if (kind == Message.CONNECTED)
+            playerConnected(playerID);
+        else if (kind == Message.DISCONNECTED)
+            playerDisconnected(playerID);
+        else
+            messageReceived(playerID, message);
+    }
+    
+    /**
+     * An entry in a shard's queue: a message from a player, or a notice that
+     * a player has connected or disconnected.
+     */
+    private static class Message {
+        static final int RECEIVED = 0;
+        static final int CONNECTED = 1;
+        static final int DISCONNECTED = 2;
+        int kind;
+        int playerID;
         Object message;
     }
     
-    private class ServerThread extends Thread {  // Listens for connection requests from clients.
+    /**
+     * A message that sendToAll() has already turned into a frame, queued for
+     * every connection in place of the message itself. The frame is never
+     * modified, so all of the connections share it.
+     */
+    static final class EncodedMessage {
+        final Object message;
+        final byte[] frame;
+        
+        EncodedMessage(Object message, byte[] frame) {
+            this.message = message;
+            this.frame = frame;
+        }
+    }
+    
+    /**
+     * The Hub's side of a connection to one client, however it is handled.
+     */
+    static abstract class Connection {
+        
+        final OutgoingQueue outgoingMessages;
+        private final AtomicLong messagesWritten = new AtomicLong();
+        private final AtomicLong flushes = new AtomicLong();
+        
+        Connection(OutgoingQueue outgoingMessages) {
+            this.outgoingMessages = outgoingMessages;
+        }
+        
+        abstract int getPlayer();
+        
+        abstract void send(Object obj); // Must not block.
+        
+        abstract void close();
+        
+        /**
+         * Records that a number of messages were written with one flush.
+         */
+        void countFlush(int messages) {
+            messagesWritten.addAndGet(messages);
+            flushes.incrementAndGet();
+        }
+        
+        double getMessagesPerFlush() {
+            long f = flushes.get();
+            return f == 0 ? 0 : (double) messagesWritten.get() / f;
+        }
+        
+    }
+    
+    private class ServerThread implements Runnable {  // Listens for connection requests from clients.
         public void run() {
             try {
                 while ( ! shutdown ) {
@@ -204,7 +569,7 @@ public class Hub{
                         System.out.println("Listener socket has shut down.");
                         break;
                     }
-                    new ConnectionToClient(incomingMessages,connection);
+                    new ConnectionToClient(connection);
                 }
             }
             catch (Exception e) {
@@ -217,23 +582,24 @@ public class Hub{
     }
     
     
-    private class ConnectionToClient { // Handles communication with one client.
+    private class ConnectionToClient extends Connection { // Handles communication with one client.
 
         private int playerID;  // The ID number for this player.
-        private BlockingQueue<Message> incomingMessages;
-        private LinkedBlockingQueue<Object> outgoingMessages;
         private Socket connection;
         private ObjectInputStream in;
         private ObjectOutputStream out;
+        private MessageFrames frames; // Used instead of in and out after the handshake, if there is a codec.
+        private DataInputStream frameIn;
+        private OutputStream frameOut;
+        private final ReentrantLock writeLock = new ReentrantLock(); // The receive thread also writes, to say goodbye.
         private volatile boolean closed;  // Set to true when connection is closing normally.
         private Thread sendThread; // Handles setup, then handles outgoing messages.
         private volatile Thread receiveThread; // Created only after connection is open.
         
-        ConnectionToClient(BlockingQueue<Message> receivedMessageQueue, Socket connection)  {
+        ConnectionToClient(Socket connection)  {
+            super(newOutgoingQueue());
             this.connection = connection;
-            incomingMessages = receivedMessageQueue;
-            outgoingMessages = new LinkedBlockingQueue<Object>();
-            sendThread =  new SendThread();
+            sendThread =  threadFactory.newThread(new SendThread());
             sendThread.start();
         }
         
@@ -254,12 +620,12 @@ public class Hub{
         }
         
         void send(Object obj) { // Just drop message into message output queue.
-            if (obj instanceof DisconnectMessage) {
-                // A signal to close the connection;
-                // discard other waiting messages, if any.
-                outgoingMessages.clear();
+            // A DisconnectMessage is a signal to close the connection. It is a
+            // control message, so it is sent before other waiting messages.
+            if (!outgoingMessages.offer(obj)) {
+                slowClientDisconnected(this);
+                close();
             }
-            outgoingMessages.add(obj);
         }
         
         private void closedWithError(String message) {
@@ -267,25 +633,120 @@ public class Hub{
             close();
         }
         
+        /**
+         * Writes and flushes one message.
+         */
+        private void write(Object message) throws IOException {
+            writeLock.lock();
+            try {
+                writeUnflushed(message);
+                flush();
+            }
+            finally {
+                writeLock.unlock();
+            }
+            countFlush(1);
+        }
+        
+        /**
+         * Writes first, then the messages that are waiting in the queue, up to
+         * maxBatch of them, and flushes once. If the queue runs out, waits up
+         * to maxBatchDelay for more. Returns false if a DisconnectMessage was
+         * written, which is always the end of a batch.
+         */
+        private boolean writeBatch(Object first) throws IOException, InterruptedException {
+            long deadline = System.nanoTime() + maxBatchDelay;
+            int count = 0;
+            boolean disconnect = false;
+            writeLock.lock();
+            try {
+                Object message = first;
+                while (true) {
+                    if (message instanceof ResetSignal) {
+                        if (frames == null)
+                            out.reset();
+                    }
+                    else {
+                        writeUnflushed(message);
+                        count++;
+                        if (message instanceof DisconnectMessage) {
+                            disconnect = true;
+                            break;
+                        }
+                    }
+                    if (count >= maxBatch)
+                        break;
+                    message = outgoingMessages.poll();
+                    if (message == null) {
+                        long wait = deadline - System.nanoTime();
+                        if (wait <= 0 || (message = outgoingMessages.poll(wait, TimeUnit.NANOSECONDS)) == null)
+                            break;
+                    }
+                }
+                flush();
+            }
+            finally {
+                writeLock.unlock();
+            }
+            if (count > 0)
+                countFlush(count);
+            return !disconnect;
+        }
+        
+        /**
+         * Writes one message, as a frame if there is a codec. Called with
+         * writeLock held.
+         */
+        private void writeUnflushed(Object message) throws IOException {
+            if (frames != null) {
+                if (message instanceof EncodedMessage)
+                    frameOut.write(((EncodedMessage) message).frame);
+                else
+                    frames.write(message, frameOut);
+            }
+            else {
+                if (autoreset)
+                    out.reset();
+                out.writeObject(message);
+            }
+        }
+        
+        private void flush() throws IOException {
+            if (frames != null)
+                frameOut.flush();
+            else
+                out.flush();
+        }
+        
+        private Object read() throws IOException, ClassNotFoundException {
+            if (frames != null)
+                return MessageFrames.read(codec, frameIn);
+            return in.readObject();
+        }
+        
         /**
          * Handles the handshake that  before the connection is opened.
          */
-        private class SendThread extends Thread {
+        private class SendThread implements Runnable {
             public void run() {
                 try {
-                    out = new ObjectOutputStream(connection.getOutputStream());
+                    out = new ObjectOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+                    out.flush();
                     in = new ObjectInputStream(connection.getInputStream());
                     String handle = (String)in.readObject(); // first input must be "Hello Hub"
                     if ( ! "Hello Hub".equals(handle) )
                         throw new Exception("Incorrect hello string received from client.");
-                    synchronized(Hub.this) {
-                        playerID = nextClientID++; // Get a player ID for this player.
-                    }
+                    playerID = nextPlayerID(); // Get a player ID for this player.
                     out.writeObject(playerID);  // Send playerID to the client.
                     out.flush();
                     extraHandshake(playerID,in,out);  // Does any extra stuff before connection is fully established.
+                    if (codec != null) {
+                        frames = new MessageFrames(codec);
+                        frameOut = new BufferedOutputStream(connection.getOutputStream());
+                        frameIn = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+                    }
                     acceptConnection(ConnectionToClient.this);
-                    receiveThread = new ReceiveThread();
+                    receiveThread = threadFactory.newThread(new ReceiveThread());
                     receiveThread.start();
                 }
                 catch (Exception e) {
@@ -303,16 +764,8 @@ public class Hub{
                     while ( ! closed ) {  // Get messages from outgoingMessages queue and send them.
                         try {
                             Object message = outgoingMessages.take();
-                            if (message instanceof ResetSignal)
-                                out.reset();
-                            else {
-                                if (autoreset)
-                                    out.reset();
-                                out.writeObject(message);
-                                out.flush();
-                                if (message instanceof DisconnectMessage) // A signal to close the connection.
-                                    close();
-                            }
+                            if ( ! writeBatch(message) ) // A DisconnectMessage is a signal to close the connection.
+                                close();
                         }
                         catch (InterruptedException e) {
                             // should mean that connection is closing
@@ -335,22 +788,18 @@ public class Hub{
             }
         }
       
-        private class ReceiveThread extends Thread {
+        private class ReceiveThread implements Runnable {
             public void run() {
                 try {
                     while ( ! closed ) {
                         try {
-                            Object message = in.readObject();
-                            Message msg = new Message();
-                            msg.playerConnection = ConnectionToClient.this;
-                            msg.message = message;
+                            Object message = read();
                             if ( ! (message instanceof DisconnectMessage) )
-                                incomingMessages.put(msg);
+                                queueIncoming(ConnectionToClient.this, message);
                             else {
                                 closed = true;
                                 outgoingMessages.clear();
-                                out.writeObject("*goodbye*");
-                                out.flush();
+                                write("*goodbye*");
                                 clientDisconnected(playerID);
                                 close();
                             }
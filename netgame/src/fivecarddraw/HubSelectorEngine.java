@@ -0,0 +1,748 @@
+package fivecarddraw;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Handles a Hub's connections with non-blocking channels, as an alternative to
+ * the two threads per connection of Hub.ConnectionToClient. A few selector
+ * threads do all of the reading and writing on sockets, and a small pool of
+ * worker threads turns bytes into messages and back. The number of threads
+ * does not depend on the number of connections.
+ * <p>
+ * The Hub must have a MessageCodec. Messages after the handshake are then
+ * frames that start with their length, and a worker only decodes a frame
+ * once all of it is in the buffer that the selector thread fills, so it never
+ * waits for a slow client. Java serialization does not mark where a message
+ * ends, so without a codec a worker could block on every client that sends
+ * half a message. The handshake itself uses object streams, as with the
+ * threaded engine, but it starts only once the client's whole "Hello Hub"
+ * has arrived, so it blocks only if extraHandshake() waits for the client,
+ * and a handshake that is not over in HANDSHAKE_TIMEOUT seconds is closed,
+ * which ends any such wait.
+ * <p>
+ * Outgoing messages are encoded by a worker into a byte buffer, up to the
+ * Hub's maximum batch of them at a time, which the selector thread then
+ * writes as the socket accepts it. Encoding pauses while too much output is
+ * waiting for a slow client, so that messages for it stay in its bounded
+ * outgoing queue, except for control messages, which are encoded ahead of
+ * them. In the same way, the selector thread stops reading from a client
+ * while too much of its input waits to be decoded, so a client that sends
+ * faster than its messages are handled is slowed down by TCP.
+ */
+class HubSelectorEngine {
+
+    private static final int MAX_PENDING_BYTES = 256 * 1024; // Encoding pauses while this much output waits for a socket.
+    private static final int MAX_INBOUND_BYTES = 256 * 1024; // Reading pauses while this much input waits to be decoded.
+    private static final int HANDSHAKE_TIMEOUT = 10; // Seconds a connection may take to finish its handshake.
+    private static final byte[] HELLO = helloBytes(); // What a Client sends first.
+
+    private final Hub hub;
+    private final SelectorLoop[] loops;
+    private final ExecutorService workers;
+    private final ScheduledThreadPoolExecutor timer; // Closes connections whose handshake takes too long.
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private volatile ServerSocketChannel serverChannel;
+
+    HubSelectorEngine(Hub hub, ConnectionOptions options) throws IOException {
+        this.hub = hub;
+        workers = Executors.newFixedThreadPool(options.getWorkerThreads(), task -> {
+            Thread t = new Thread(task, "Hub worker");
+            t.setDaemon(true);
+            return t;
+        });
+        timer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread t = new Thread(task, "Hub handshake timer");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        loops = new SelectorLoop[options.getSelectorThreads()];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new SelectorLoop(i);
+            loops[i].start();
+        }
+    }
+
+    /**
+     * Returns the bytes of the stream that a Client opens with: the
+     * ObjectOutputStream header and the string "Hello Hub".
+     */
+    private static byte[] helloBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject("Hello Hub");
+            out.flush();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e); // Cannot happen with a ByteArrayOutputStream.
+        }
+        return bytes.toByteArray();
+    }
+
+    void listen(int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        serverChannel = channel;
+        SelectorLoop loop = loops[0];
+        loop.execute(() -> {
+            try {
+                channel.register(loop.selector, SelectionKey.OP_ACCEPT);
+            }
+            catch (ClosedChannelException e) {
+                // stopListening() was called first.
+            }
+        });
+    }
+
+    boolean isListening() {
+        return serverChannel != null;
+    }
+
+    void stopListening() {
+        ServerSocketChannel channel = serverChannel;
+        serverChannel = null;
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+        }
+        loops[0].selector.wakeup(); // Lets the selector release the listening socket.
+        System.out.println("Listener socket has shut down.");
+    }
+
+    private void accept(ServerSocketChannel server) {
+        SocketChannel channel;
+        try {
+            channel = server.accept();
+            if (channel == null)
+                return;
+            channel.configureBlocking(false);
+        }
+        catch (IOException e) {
+            if (serverChannel != null)
+                System.out.println("Error while accepting a connection: " + e);
+            return;
+        }
+        SelectorLoop loop = loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+        SelectorConnection connection = new SelectorConnection(channel, loop);
+        loop.execute(connection::register);
+    }
+
+    /**
+     * A thread that runs one Selector. Other threads change its keys by
+     * passing it tasks with execute().
+     */
+    private class SelectorLoop extends Thread {
+
+        final Selector selector;
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024); // Shared by all of its channels.
+
+        SelectorLoop(int number) throws IOException {
+            super("Hub selector " + number);
+            selector = Selector.open();
+            setDaemon(true);
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null)
+                        task.run();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid())
+                            continue;
+                        if (key.isAcceptable()) {
+                            accept((ServerSocketChannel) key.channel());
+                            continue;
+                        }
+                        SelectorConnection connection = (SelectorConnection) key.attachment();
+                        if (key.isReadable())
+                            connection.readReady(readBuffer);
+                        if (key.isValid() && key.isWritable())
+                            connection.writePending();
+                    }
+                }
+                catch (Exception e) {
+                    System.out.println("\nUnexpected error in Hub selector thread:");
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * One client connection. Socket operations and the key are only touched
+     * by the connection's selector thread; decoding and encoding are each done
+     * by at most one worker at a time.
+     */
+    private class SelectorConnection extends Hub.Connection {
+
+        private final SocketChannel channel;
+        private final SelectorLoop loop;
+        private SelectionKey key;
+        private volatile int playerID;
+        private final InboundBuffer inbound = new InboundBuffer();
+        private final ConcurrentLinkedQueue<ByteBuffer> pendingWrites = new ConcurrentLinkedQueue<ByteBuffer>();
+        private final AtomicLong pendingBytes = new AtomicLong(); // Bytes in pendingWrites.
+        private final Object writeLock = new Object(); // Held while writing to channelOut.
+        private ObjectInputStream in;
+        private ObjectOutputStream out;
+        private ChannelOutput channelOut; // Where out writes to.
+        private MessageFrames frames; // Used instead of in and out after the handshake.
+        private final AtomicBoolean decoding = new AtomicBoolean(true); // The handshake reads first.
+        private final AtomicBoolean encoding = new AtomicBoolean();
+        private final AtomicBoolean readPaused = new AtomicBoolean(); // Set while OP_READ is off because inbound is full.
+        private boolean handshakeStarted; // Used only by the selector thread.
+        private final AtomicBoolean handshakeSettled = new AtomicBoolean(); // Set by whichever of the handshake and its timeout ends first.
+        private final ScheduledFuture<?> handshakeTimeout;
+        private volatile boolean opened; // Set when the handshake is complete.
+        private volatile boolean closed; // Set to true when connection is closing normally.
+        private volatile boolean closeWhenWritten;
+
+        SelectorConnection(SocketChannel channel, SelectorLoop loop) {
+            super(hub.newOutgoingQueue());
+            this.channel = channel;
+            this.loop = loop;
+            // Scheduled before the connection is registered, so that the
+            // handshake, which starts once it is, can always cancel it.
+            handshakeTimeout = timer.schedule(this::handshakeTimedOut, HANDSHAKE_TIMEOUT, TimeUnit.SECONDS);
+        }
+
+        int getPlayer() {
+            return playerID;
+        }
+
+        void send(Object obj) {
+            // A DisconnectMessage is a signal to close the connection. It is a
+            // control message, so it is sent before other waiting messages.
+            if (!outgoingMessages.offer(obj)) {
+                hub.slowClientDisconnected(this);
+                close();
+                return;
+            }
+            if (opened && encoding.compareAndSet(false, true))
+                workers.execute(this::encode);
+        }
+
+        void close() {
+            closed = true;
+            inbound.end();
+            loop.execute(this::closeChannel);
+        }
+
+        private void closedWithError(String message) {
+            hub.connectionToClientClosedWithError(this, message);
+            close();
+        }
+
+        // ---- Run by the selector thread.
+
+        void register() {
+            try {
+                key = channel.register(loop.selector, SelectionKey.OP_READ, this);
+            }
+            catch (ClosedChannelException e) {
+            }
+        }
+
+        void readReady(ByteBuffer buffer) {
+            buffer.clear();
+            int count;
+            try {
+                count = channel.read(buffer);
+            }
+            catch (IOException e) {
+                count = -1;
+            }
+            if (count < 0) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                inbound.end(); // The decoder sees the end of the stream as an IOException.
+            }
+            else {
+                buffer.flip();
+                inbound.append(buffer);
+                if (inbound.isFull()) {
+                    readPaused.set(true);
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+            }
+            if (!handshakeStarted) {
+                // Wait for all of the hello, so that reading it cannot block a worker.
+                if (count >= 0 && inbound.available() < HELLO.length)
+                    return;
+                handshakeStarted = true;
+                workers.execute(this::handshake);
+            }
+            if (opened && decoding.compareAndSet(false, true))
+                workers.execute(this::decode);
+        }
+
+        /**
+         * Writes as much of the pending output as the socket will take, and
+         * asks to be called again when it can take more.
+         */
+        void writePending() {
+            if (key == null || !key.isValid())
+                return;
+            try {
+                ByteBuffer buffer;
+                while ((buffer = pendingWrites.peek()) != null) {
+                    channel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        resumeEncoding();
+                        return;
+                    }
+                    pendingWrites.poll();
+                    pendingBytes.addAndGet(-buffer.limit());
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                resumeEncoding();
+                if (closeWhenWritten)
+                    closeChannel();
+            }
+            catch (IOException e) {
+                if (!closed) {
+                    closedWithError("Error while sending data to client.");
+                    System.out.println("Server send failed with IOException: " + e);
+                }
+                else
+                    closeChannel();
+            }
+        }
+
+        /**
+         * Starts encoding again if it paused because too much output was
+         * pending.
+         */
+        private void resumeEncoding() {
+            if (opened && pendingBytes.get() < MAX_PENDING_BYTES && !outgoingMessages.isEmpty()
+                    && encoding.compareAndSet(false, true))
+                workers.execute(this::encode);
+        }
+
+        /**
+         * Closes the connection if the handshake has not finished. Run by the
+         * timer thread.
+         */
+        void handshakeTimedOut() {
+            if (!handshakeSettled.compareAndSet(false, true))
+                return;
+            closed = true;
+            inbound.end(); // Ends any read that the handshake is waiting in.
+            loop.execute(this::closeChannel);
+            System.out.println("Connection closed: handshake not finished in " + HANDSHAKE_TIMEOUT + " seconds.");
+        }
+
+        /**
+         * Starts reading again after decoding has made room in inbound.
+         */
+        private void resumeReading() {
+            if (key != null && key.isValid())
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+
+        private void closeChannel() {
+            if (key != null)
+                key.cancel();
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+            }
+        }
+
+        // ---- Run by workers.
+
+        /**
+         * Does the same handshake as Hub.ConnectionToClient, then goes on to
+         * decode any messages that have arrived.
+         */
+        void handshake() {
+            try {
+                if (!inbound.startsWith(HELLO))
+                    throw new Exception("Incorrect hello string received from client.");
+                channelOut = new ChannelOutput();
+                out = new ObjectOutputStream(channelOut);
+                out.flush();
+                in = new ObjectInputStream(inbound);
+                String handle = (String) in.readObject(); // first input must be "Hello Hub"
+                if (!"Hello Hub".equals(handle))
+                    throw new Exception("Incorrect hello string received from client.");
+                playerID = hub.nextPlayerID(); // Get a player ID for this player.
+                out.writeObject(playerID); // Send playerID to the client.
+                out.flush();
+                hub.extraHandshake(playerID, in, out); // Does any extra stuff before connection is fully established.
+                frames = new MessageFrames(hub.getCodec());
+            }
+            catch (Exception e) {
+                if (!handshakeSettled.compareAndSet(false, true))
+                    return; // Timed out, which caused the exception.
+                handshakeTimeout.cancel(false);
+                closed = true;
+                loop.execute(this::closeChannel);
+                System.out.println("\nError while setting up connection: " + e);
+                e.printStackTrace();
+                return;
+            }
+            if (!handshakeSettled.compareAndSet(false, true))
+                return; // handshakeTimedOut() has closed the connection.
+            handshakeTimeout.cancel(false);
+            try {
+                hub.acceptConnection(this);
+            }
+            catch (Exception e) {
+                closedWithError("Internal Error: Unexpected exception while accepting connection: " + e);
+                System.out.println("\nUnexpected error while accepting connection:");
+                e.printStackTrace();
+                return;
+            }
+            opened = true;
+            if (!outgoingMessages.isEmpty() && encoding.compareAndSet(false, true))
+                workers.execute(this::encode);
+            decode();
+        }
+
+        /**
+         * Decodes messages while the inbound buffer holds whole frames.
+         */
+        private void decode() {
+            try {
+                while (!closed) {
+                    if (!inbound.hasFrame()) {
+                        decoding.set(false);
+                        if (!inbound.hasFrame() || !decoding.compareAndSet(false, true)) {
+                            resumeReadingIfRoom();
+                            return; // Whoever added data next will start decoding again.
+                        }
+                    }
+                    byte[] frame = inbound.takeFrame();
+                    resumeReadingIfRoom();
+                    Object message = MessageFrames.decode(hub.getCodec(), frame, 0, frame.length);
+                    if (!(message instanceof DisconnectMessage))
+                        hub.queueIncoming(this, message);
+                    else {
+                        closed = true;
+                        outgoingMessages.clear();
+                        synchronized (writeLock) {
+                            write("*goodbye*");
+                            flush();
+                        }
+                        countFlush(1);
+                        hub.clientDisconnected(playerID);
+                        closeWhenWritten();
+                    }
+                }
+            }
+            catch (IOException e) {
+                if (!closed) {
+                    closedWithError("Error while reading data from client.");
+                    System.out.println("Server receive failed with IOException: " + e);
+                }
+            }
+            catch (Exception e) {
+                if (!closed) {
+                    closedWithError("Internal Error: Unexpected exception while reading: " + e);
+                    System.out.println("\nUnexpected error while reading from client:");
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * Asks the selector thread to read again if it stopped because
+         * inbound was full, and inbound now has room. Since the selector
+         * thread pauses reading only when a whole frame is waiting, decode()
+         * always runs once more after that, and gets here.
+         */
+        private void resumeReadingIfRoom() {
+            if (readPaused.get() && !inbound.isFull() && readPaused.compareAndSet(true, false))
+                loop.execute(this::resumeReading);
+        }
+
+        /**
+         * Returns the next message to encode, or null if there is none. While
+         * too much output is pending, only control messages are encoded.
+         */
+        private Object nextToEncode() {
+            return pendingBytes.get() < MAX_PENDING_BYTES ? outgoingMessages.poll() : outgoingMessages.pollControl();
+        }
+
+        /**
+         * Serializes the queued messages into pending output, as the send
+         * thread of Hub.ConnectionToClient does, flushing once for each batch
+         * of up to maxBatch messages.
+         */
+        private void encode() {
+            try {
+                while (true) {
+                    Object message = null;
+                    while (!closed && (message = nextToEncode()) != null) {
+                        int count = 0;
+                        synchronized (writeLock) {
+                            while (true) {
+                                if (!(message instanceof ResetSignal)) { // Has no effect with a codec.
+                                    write(message);
+                                    count++;
+                                }
+                                if (message instanceof DisconnectMessage || count >= hub.getMaxBatch()
+                                        || (message = nextToEncode()) == null)
+                                    break;
+                            }
+                            flush();
+                        }
+                        if (count > 0)
+                            countFlush(count);
+                        if (message instanceof DisconnectMessage) { // A signal to close the connection.
+                            closed = true;
+                            closeWhenWritten();
+                        }
+                    }
+                    encoding.set(false);
+                    if (closed || (pendingBytes.get() < MAX_PENDING_BYTES ? outgoingMessages.isEmpty()
+                            : !outgoingMessages.hasControl()) || !encoding.compareAndSet(false, true))
+                        return; // writePending() starts encoding again once the socket takes the output.
+                }
+            }
+            catch (IOException e) {
+                encoding.set(false);
+                if (!closed) {
+                    closedWithError("Error while sending data to client.");
+                    System.out.println("Server encode failed with IOException: " + e);
+                }
+            }
+            catch (Exception e) {
+                encoding.set(false);
+                if (!closed) {
+                    closedWithError("Internal Error: Unexpected exception while sending: " + e);
+                    System.out.println("\nUnexpected error while sending to client:");
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * Writes one message, which reaches the pending output at the next
+         * flush(). Called with writeLock held.
+         */
+        private void write(Object message) throws IOException {
+            if (message instanceof Hub.EncodedMessage)
+                channelOut.write(((Hub.EncodedMessage) message).frame);
+            else
+                frames.write(message, channelOut);
+        }
+
+        private void flush() {
+            channelOut.flush();
+        }
+
+        private void closeWhenWritten() {
+            inbound.end();
+            loop.execute(() -> {
+                closeWhenWritten = true;
+                writePending();
+            });
+        }
+
+        /**
+         * Collects what is written, by out during the handshake and by frames
+         * after it, and passes it to the selector thread each time it is
+         * flushed.
+         */
+        private class ChannelOutput extends OutputStream {
+
+            private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+
+            public void write(int b) {
+                bytes.write(b);
+            }
+
+            public void write(byte[] b, int off, int len) {
+                bytes.write(b, off, len);
+            }
+
+            public void flush() {
+                if (bytes.size() == 0)
+                    return;
+                pendingBytes.addAndGet(bytes.size());
+                pendingWrites.add(ByteBuffer.wrap(bytes.toByteArray()));
+                bytes.reset();
+                loop.execute(SelectorConnection.this::writePending);
+            }
+        }
+    }
+
+    /**
+     * Bytes received on a connection, read as a stream by its decoder. Reads
+     * wait for more bytes until end() has been called.
+     */
+    private static class InboundBuffer extends InputStream {
+
+        private byte[] data = new byte[1024];
+        private int start, end; // The unread bytes are data[start] to data[end-1].
+        private boolean ended;
+
+        synchronized void append(ByteBuffer buffer) {
+            int count = buffer.remaining();
+            if (end + count > data.length) {
+                int unread = end - start;
+                byte[] target = data;
+                if (unread + count > data.length)
+                    target = new byte[Math.max(2 * data.length, unread + count)];
+                System.arraycopy(data, start, target, 0, unread);
+                data = target;
+                start = 0;
+                end = unread;
+            }
+            buffer.get(data, end, count);
+            end += count;
+            notifyAll();
+        }
+
+        synchronized void end() {
+            ended = true;
+            notifyAll();
+        }
+
+        /**
+         * Returns true if the unread bytes start with prefix.
+         */
+        synchronized boolean startsWith(byte[] prefix) {
+            if (end - start < prefix.length)
+                return false;
+            for (int i = 0; i < prefix.length; i++) {
+                if (data[start + i] != prefix[i])
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Returns true if there are MAX_INBOUND_BYTES unread bytes and a whole
+         * frame among them, so reading should wait until the decoder makes
+         * room. A frame that is still arriving never makes the buffer full,
+         * so that frames up to MessageFrames.MAX_FRAME_LENGTH can be received.
+         * Until the handshake reads it, the stream header at the start reads
+         * as a negative length, so the buffer is full at MAX_INBOUND_BYTES.
+         */
+        synchronized boolean isFull() {
+            return end - start >= MAX_INBOUND_BYTES && hasFrame();
+        }
+
+        /**
+         * Returns true if a whole frame has arrived, or if takeFrame() would
+         * fail because the stream has ended.
+         */
+        synchronized boolean hasFrame() {
+            if (end - start < 4)
+                return ended;
+            int length = frameLength();
+            return length < 0 || length > MessageFrames.MAX_FRAME_LENGTH || end - start - 4 >= length || ended;
+        }
+
+        /**
+         * Removes a whole frame and returns its body. Only call this when
+         * hasFrame() is true.
+         */
+        synchronized byte[] takeFrame() throws IOException {
+            if (end - start < 4)
+                throw new EOFException();
+            int length = frameLength();
+            if (length < 0 || length > MessageFrames.MAX_FRAME_LENGTH)
+                throw new InvalidObjectException("Illegal frame length " + length);
+            if (end - start - 4 < length)
+                throw new EOFException();
+            byte[] body = new byte[length];
+            System.arraycopy(data, start + 4, body, 0, length);
+            start += 4 + length;
+            return body;
+        }
+
+        private int frameLength() {
+            return (data[start] & 0xFF) << 24 | (data[start + 1] & 0xFF) << 16
+                    | (data[start + 2] & 0xFF) << 8 | (data[start + 3] & 0xFF);
+        }
+
+        public synchronized int available() {
+            return end - start;
+        }
+
+        public synchronized int read() throws IOException {
+            if (!await())
+                return -1;
+            return data[start++] & 0xFF;
+        }
+
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!await())
+                return -1;
+            int count = Math.min(len, end - start);
+            System.arraycopy(data, start, b, off, count);
+            start += count;
+            return count;
+        }
+
+        private boolean await() throws IOException {
+            while (start == end) {
+                if (ended)
+                    return false;
+                try {
+                    wait();
+                }
+                catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            return true;
+        }
+    }
+
+}
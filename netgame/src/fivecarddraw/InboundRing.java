@@ -0,0 +1,230 @@
+package fivecarddraw;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A ring of preallocated envelopes that carries messages from the threads
+ * that receive them to the one thread that handles them, as an alternative to
+ * a LinkedBlockingQueue of new objects. Nothing is allocated to pass a message
+ * along, and neither side takes a lock.
+ * <p>
+ * A producer claims the next sequence number with getAndIncrement(), waits
+ * until the consumer has finished with the envelope that number maps to,
+ * fills it in, and publishes it by writing the sequence number into the
+ * envelope. The consumer takes envelopes strictly in sequence order, so
+ * messages are handled in the order their sequence numbers were claimed.
+ * While there is nothing to handle, the consumer waits as its
+ * ConnectionOptions.WaitStrategy says: by spinning, by yielding, or by
+ * parking until a producer wakes it. A producer that finds the ring full
+ * yields, or parks briefly with PARK; it never spins, since the consumer it
+ * waits for may need the processor. While it waits, it reads nothing more
+ * from its client. For a Hub's receive thread, that leaves the bytes in the
+ * socket. For a worker of HubSelectorEngine, it leaves them in the
+ * connection's inbound buffer, and the selector stops reading once that
+ * buffer is full. Either way TCP slows the client down. A waiting worker
+ * does not encode output for any connection in the meantime.
+ * <p>
+ * A few entries must be added by threads that cannot wait: the ring's own
+ * thread, which is the only one that can make room, or a thread holding a
+ * lock that the ring's thread may be waiting for. publishAside() puts such an
+ * entry in a separate unbounded queue, which the consumer checks before
+ * each envelope. It is handled after every entry claimed before it.
+ */
+class InboundRing {
+
+    /**
+     * Handles one entry. Called only by the ring's thread.
+     */
+    interface Handler {
+        void handle(int kind, int playerID, Object message);
+    }
+
+    /**
+     * Entries of a kind, with sequence numbers before a bound, that are to be
+     * skipped. Both are replaced together by replacing the object.
+     */
+    private static class Discard {
+        final int kind;
+        final long before;
+
+        Discard(int kind, long before) {
+            this.kind = kind;
+            this.before = before;
+        }
+    }
+
+    /**
+     * An entry added by publishAside(), with the sequence number that was
+     * next to be claimed when it was added.
+     */
+    private static class Aside {
+        final long after;
+        final int kind;
+        final int playerID;
+        final Object message;
+
+        Aside(long after, int kind, int playerID, Object message) {
+            this.after = after;
+            this.kind = kind;
+            this.playerID = playerID;
+            this.message = message;
+        }
+    }
+
+    private static class Envelope {
+        volatile long published = -1; // Sequence number of the entry in this envelope.
+        int kind;
+        int playerID;
+        Object message;
+    }
+
+    private final Envelope[] ring;
+    private final int mask;
+    private final ConnectionOptions.WaitStrategy waitStrategy;
+    private final Handler handler;
+    private final AtomicLong claimed = new AtomicLong(); // The next sequence number to claim.
+    private final AtomicLong consumed = new AtomicLong(); // Envelopes before this one can be reused.
+    private volatile Discard discard; // The entries to skip, or null.
+    private final ConcurrentLinkedQueue<Aside> aside = new ConcurrentLinkedQueue<Aside>();
+    private volatile boolean sleeping; // Set while the consumer is parked.
+    private final Thread consumer;
+
+    /**
+     * Creates a ring and starts the daemon thread that handles its entries.
+     *
+     * @param size the number of envelopes, a power of 2.
+     */
+    InboundRing(int size, ConnectionOptions.WaitStrategy waitStrategy, ThreadFactory threadFactory, Handler handler) {
+        if (size < 2 || Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("The ring size must be a power of 2.");
+        ring = new Envelope[size];
+        for (int i = 0; i < size; i++)
+            ring[i] = new Envelope();
+        mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        this.handler = handler;
+        consumer = threadFactory.newThread(this::consume);
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Adds an entry, waiting while the ring is full.
+     */
+    void publish(int kind, int playerID, Object message) {
+        long sequence = claimed.getAndIncrement();
+        while (sequence - consumed.get() >= ring.length)
+            idle(false);
+        Envelope e = ring[(int) sequence & mask];
+        e.kind = kind;
+        e.playerID = playerID;
+        e.message = message;
+        e.published = sequence; // Makes the fields above visible to the consumer.
+        if (sleeping)
+            LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Adds an entry without waiting, whether or not the ring is full. This
+     * allocates, so it is meant for rare entries, such as notices of players
+     * connecting and disconnecting, from threads that must not wait.
+     */
+    void publishAside(int kind, int playerID, Object message) {
+        aside.add(new Aside(claimed.get(), kind, playerID, message));
+        if (sleeping)
+            LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Skips the entries of one kind that have been claimed but not yet
+     * handled.
+     */
+    void discardPending(int kind) {
+        discard = new Discard(kind, claimed.get());
+    }
+
+    private void consume() {
+        long next = 0;
+        while (true) {
+            Envelope e = ring[(int) next & mask];
+            boolean ready = e.published == next;
+            // Checked after reading published, so that an entry put aside
+            // before envelope next was published is handled before it.
+            handleAside(next);
+            if (!ready) {
+                idle(true);
+                continue;
+            }
+            int kind = e.kind;
+            int playerID = e.playerID;
+            Object message = e.message;
+            e.message = null;
+            consumed.lazySet(++next); // The envelope can be refilled now.
+            Discard d = discard;
+            if (d != null && kind == d.kind && next <= d.before)
+                continue;
+            handle(kind, playerID, message);
+        }
+    }
+
+    /**
+     * Handles the entries put aside before envelope next was claimed.
+     */
+    private void handleAside(long next) {
+        Aside a;
+        while ((a = aside.peek()) != null && a.after <= next) {
+            aside.poll();
+            handle(a.kind, a.playerID, a.message);
+        }
+    }
+
+    private void handle(int kind, int playerID, Object message) {
+        try {
+            handler.handle(kind, playerID, message);
+        }
+        catch (Exception ex) {
+            System.out.println("Exception while handling received message:");
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns true if there is an entry put aside that can be handled before
+     * envelope next.
+     */
+    private boolean hasAside(long next) {
+        Aside a = aside.peek();
+        return a != null && a.after <= next;
+    }
+
+    /**
+     * Waits a little for the other side, as the wait strategy says.
+     */
+    private void idle(boolean isConsumer) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                if (!isConsumer)
+                    Thread.yield();
+                break;
+            case YIELD:
+                Thread.yield();
+                break;
+            default:
+                if (!isConsumer) {
+                    LockSupport.parkNanos(this, 10000); // The consumer does not wake producers.
+                    break;
+                }
+                sleeping = true;
+                // A producer publishes, then checks sleeping; check again
+                // after setting it, so that one of the two sees the other.
+                long next = consumed.get();
+                if (ring[(int) next & mask].published != next && !hasAside(next))
+                    LockSupport.park(this);
+                sleeping = false;
+        }
+    }
+
+}
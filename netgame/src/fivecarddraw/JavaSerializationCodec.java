@@ -0,0 +1,33 @@
+package fivecarddraw;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * A MessageCodec that writes each message with Java serialization, as a
+ * complete serialization stream of its own. It works for any Serializable
+ * message, and PokerMessageCodec uses it for the messages that it has no
+ * format for.
+ */
+public class JavaSerializationCodec implements MessageCodec {
+
+    public void encode(Object message, DataOutputStream out) throws IOException {
+        ObjectOutputStream objectOut = new ObjectOutputStream(out);
+        objectOut.writeObject(message);
+        objectOut.flush();
+    }
+
+    public Object decode(DataInputStream in) throws IOException {
+        try {
+            return new ObjectInputStream(in).readObject();
+        }
+        catch (ClassNotFoundException e) {
+            throw new InvalidObjectException("Unknown class in message: " + e.getMessage());
+        }
+    }
+
+}
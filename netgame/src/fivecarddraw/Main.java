@@ -26,6 +26,10 @@ public class Main extends Application {
     private static final int DEFAULT_PORT = 32010;
     private static final String DEFAULT_HOST = "localhost";
 
+    /**
+     * Starts the program. With --seed=N, a game started from this window
+     * deals from table seed N, as PokerHub(port, seed) describes.
+     */
     public static void main(String[] args) {
         launch(args);
     }
@@ -36,11 +40,23 @@ public class Main extends Application {
     private TextField listeningPortInput;
     private TextField hostInput;
     private TextField connectPortInput;
+    private Long seed; // The table seed from --seed, or null for decks shuffled from entropy.
 
     public void start(Stage stage) {
 
         window = stage;
 
+        String seedParameter = getParameters().getNamed().get("seed");
+        if (seedParameter != null) {
+            try {
+                seed = Long.parseLong(seedParameter.trim());
+            } catch (NumberFormatException e) {
+                errorMessage("The value of --seed is not a legal integer!");
+                Platform.exit();
+                return;
+            }
+        }
+
         Button okBtn = new Button("OK");
         okBtn.setDefaultButton(true);
         Button cancelBtn = new Button("Cancel");
@@ -141,7 +157,7 @@ public class Main extends Application {
             }
             Hub hub;
             try {
-                hub = new PokerHub(port);
+                hub = seed == null ? new PokerHub(port) : new PokerHub(port, seed);
             } catch (IOException e) {
                 errorMessage("Sorry, could not listen on port number " + port);
                 message.setText("Please try a different port number!");
@@ -0,0 +1,26 @@
+package fivecarddraw;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Turns messages into bytes and back, for a Hub and its Clients that have
+ * been given the codec with ConnectionOptions.setCodec(). Each message is
+ * sent as a frame: its length as a four-byte int, followed by the bytes that
+ * encode() writes for it. Both ends of a connection must use the same codec.
+ */
+public interface MessageCodec {
+
+    /**
+     * Writes the body of the frame for a message.
+     */
+    void encode(Object message, DataOutputStream out) throws IOException;
+
+    /**
+     * Reads a message written by encode(). The stream holds exactly the body
+     * of one frame.
+     */
+    Object decode(DataInputStream in) throws IOException;
+
+}
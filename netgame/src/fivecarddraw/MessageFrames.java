@@ -0,0 +1,105 @@
+package fivecarddraw;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.OutputStream;
+
+/**
+ * Writes and reads the length-prefixed frames of a connection that uses a
+ * MessageCodec. A MessageFrames object reuses one buffer for the frames it
+ * writes, so it belongs to a single connection and must only be used by one
+ * thread at a time.
+ */
+class MessageFrames {
+
+    static final int MAX_FRAME_LENGTH = 1 << 24;
+
+    private final MessageCodec codec;
+    private final FrameBuffer buffer = new FrameBuffer();
+    private final DataOutputStream data = new DataOutputStream(buffer);
+
+    MessageFrames(MessageCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Writes the frame for a message to a stream, without flushing it.
+     */
+    void write(Object message, OutputStream out) throws IOException {
+        encode(message);
+        out.write(buffer.bytes(), 0, buffer.size());
+    }
+
+    /**
+     * Returns the frame for a message, including its length.
+     */
+    byte[] toFrame(Object message) throws IOException {
+        encode(message);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Returns the frame for a message, for a caller that has no MessageFrames
+     * of its own. Safe to call from any thread.
+     */
+    static byte[] frameOf(MessageCodec codec, Object message) throws IOException {
+        return new MessageFrames(codec).toFrame(message);
+    }
+
+    private void encode(Object message) throws IOException {
+        buffer.reset();
+        data.writeInt(0); // Replaced by the length below.
+        codec.encode(message, data);
+        data.flush();
+        int length = buffer.size() - 4;
+        if (length > MAX_FRAME_LENGTH)
+            throw new IOException("Message is too long to send: " + length + " bytes.");
+        byte[] b = buffer.bytes();
+        b[0] = (byte) (length >>> 24);
+        b[1] = (byte) (length >>> 16);
+        b[2] = (byte) (length >>> 8);
+        b[3] = (byte) length;
+    }
+
+    /**
+     * Reads one frame from a stream and decodes it.
+     */
+    static Object read(MessageCodec codec, DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_LENGTH)
+            throw new InvalidObjectException("Illegal frame length " + length);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return decode(codec, body, 0, length);
+    }
+
+    /**
+     * Decodes the body of a frame.
+     */
+    static Object decode(MessageCodec codec, byte[] body, int offset, int length) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(body, offset, length);
+        Object message = codec.decode(new DataInputStream(bytes));
+        if (bytes.available() != 0)
+            throw new InvalidObjectException("Frame has " + bytes.available() + " bytes left over.");
+        return message;
+    }
+
+    /**
+     * A ByteArrayOutputStream whose array can be used without copying it.
+     */
+    private static class FrameBuffer extends ByteArrayOutputStream {
+
+        FrameBuffer() {
+            super(256);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+package fivecarddraw;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The queue of messages waiting to be sent on one of a Hub's connections. It
+ * has two lanes. Control messages, for which Hub.isControl() is true, go in
+ * the control lane, which is always taken from first, so they are sent ahead
+ * of any backlog of other messages without discarding it; messages keep
+ * their order within each lane.
+ * <p>
+ * Without a limit, both lanes are unbounded. With a limit, a message that
+ * arrives while the other lane is full is handled by the Hub's
+ * ConnectionOptions.SlowClientPolicy, so that a client that stops reading
+ * cannot make the Hub buffer messages for it without end. Control messages
+ * are never dropped, since a client relies on seeing each of them, so a
+ * client with limit of them waiting is disconnected whatever the policy.
+ */
+class OutgoingQueue {
+
+    private final ArrayDeque<Object> control = new ArrayDeque<Object>();
+    private final ArrayDeque<Object> bulk = new ArrayDeque<Object>();
+    private final Hub hub;
+    private final int limit; // Most messages in bulk, or 0 for no limit.
+    private final ConnectionOptions.SlowClientPolicy policy;
+    private final long timeout; // Nanoseconds bulk may stay full, with DISCONNECT.
+    private final ReentrantLock lock = new ReentrantLock(); // Guards both lanes and fullSince.
+    private final Condition notEmpty = lock.newCondition();
+    private long fullSince = -1; // When bulk was first found full, or -1.
+    private final AtomicLong dropped = new AtomicLong();
+
+    OutgoingQueue(Hub hub, int limit, ConnectionOptions.SlowClientPolicy policy, long timeout) {
+        this.hub = hub;
+        this.limit = limit;
+        this.policy = policy;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Adds a message to its lane, applying the policy if it is full. Returns
+     * false if the control lane is full, or if the other lane has been full
+     * for longer than the DISCONNECT policy allows, in which case the message
+     * is not queued and the connection should be closed.
+     */
+    boolean offer(Object message) {
+        boolean isControl = hub.isControl(unwrap(message));
+        lock.lock();
+        try {
+            if (isControl) {
+                if (limit > 0 && control.size() >= limit)
+                    return false;
+                control.add(message);
+            }
+            else if (limit == 0 || bulk.size() < limit) {
+                fullSince = -1;
+                bulk.add(message);
+            }
+            else {
+                if (policy == ConnectionOptions.SlowClientPolicy.DISCONNECT) {
+                    long now = System.nanoTime();
+                    if (fullSince < 0)
+                        fullSince = now;
+                    else if (now - fullSince >= timeout)
+                        return false;
+                }
+                int removed = policy == ConnectionOptions.SlowClientPolicy.COALESCE ? removeSuperseded(message) : 0;
+                if (removed == 0) {
+                    bulk.poll();
+                    removed = 1;
+                }
+                dropped.addAndGet(removed);
+                bulk.add(message);
+            }
+            notEmpty.signal();
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the next message, waiting until there is one.
+     */
+    Object take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (control.isEmpty() && bulk.isEmpty())
+                notEmpty.await();
+            return next();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the next message, or returns null if there is none.
+     */
+    Object poll() {
+        lock.lock();
+        try {
+            return next();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the next message, waiting up to the timeout for one. Returns
+     * null if there is none by then.
+     */
+    Object poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (control.isEmpty() && bulk.isEmpty()) {
+                if (nanos <= 0)
+                    return null;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return next();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the next control message, or returns null if there is none.
+     */
+    Object pollControl() {
+        lock.lock();
+        try {
+            return control.poll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    boolean hasControl() {
+        lock.lock();
+        try {
+            return !control.isEmpty();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            control.clear();
+            bulk.clear();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return control.size() + bulk.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages that were dropped because the queue was
+     * full.
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    private Object next() {
+        Object message = control.poll();
+        return message != null ? message : bulk.poll();
+    }
+
+    /**
+     * Removes the queued messages that newer supersedes, and returns how many
+     * there were. Called with lock held.
+     */
+    private int removeSuperseded(Object newer) {
+        Object message = unwrap(newer);
+        int removed = 0;
+        for (Iterator<Object> it = bulk.iterator(); it.hasNext(); ) {
+            if (hub.supersedes(message, unwrap(it.next()))) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private static Object unwrap(Object message) {
+        return message instanceof Hub.EncodedMessage ? ((Hub.EncodedMessage) message).message : message;
+    }
+
+}
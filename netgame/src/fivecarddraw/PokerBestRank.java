@@ -0,0 +1,218 @@
+package fivecarddraw;
+
+/**
+ * Ranks the best five-card poker hand that can be made from up to seven cards,
+ * as in Hold'em and other community-card games. The rank uses the same encoding
+ * as PokerRank.getRank(), so it can be compared directly with ranks of
+ * five-card hands, and described with PokerRank.describe().
+ * <p>
+ * Cards can be added and removed one at a time. The object keeps a count of
+ * each value and a mask of the values held in each suit, so adding or removing
+ * a card is constant time, and getRank() finds the best hand from those
+ * summaries instead of ranking all 21 five-card subsets of seven cards.
+ */
+public class PokerBestRank {
+
+    public static final int MAX_CARDS = 7;
+
+    private final int[] counts = new int[13]; // Number of cards of each value, indexed by value-2.
+    private final int[] suitBits = new int[4]; // For each suit, bit value-2 is set if that card is held.
+    private long cardsHeld; // Bit suit*13 + value-2 is set for each card held.
+    private int cardCount;
+    private int rank = -1;
+
+    public PokerBestRank(PokerCard... cards) {
+        if (cards != null) {
+            for (PokerCard c : cards)
+                add(c);
+        }
+    }
+
+    public void add(PokerCard card) {
+        if (card == null)
+            throw new IllegalArgumentException("Cards can't be null for class PokerBestRank");
+        add(PokerEvaluator.pack(card));
+    }
+
+    /**
+     * Adds a card that has been packed with PokerEvaluator.pack().
+     */
+    public void add(int packedCard) {
+        int r = (packedCard >> 8) & 0xF;
+        int suit = Integer.numberOfTrailingZeros(packedCard >> 12);
+        long bit = 1L << (suit * 13 + r);
+        if ((cardsHeld & bit) != 0)
+            throw new IllegalArgumentException("PokerBestRank already holds that card.");
+        if (cardCount == MAX_CARDS)
+            throw new IllegalArgumentException("PokerBestRank does not support hands with more than seven cards.");
+        cardsHeld |= bit;
+        counts[r]++;
+        suitBits[suit] |= 1 << r;
+        cardCount++;
+        rank = -1;
+    }
+
+    public void remove(PokerCard card) {
+        if (card == null)
+            throw new IllegalArgumentException("Cards can't be null for class PokerBestRank");
+        remove(PokerEvaluator.pack(card));
+    }
+
+    /**
+     * Removes a card that has been packed with PokerEvaluator.pack().
+     */
+    public void remove(int packedCard) {
+        int r = (packedCard >> 8) & 0xF;
+        int suit = Integer.numberOfTrailingZeros(packedCard >> 12);
+        long bit = 1L << (suit * 13 + r);
+        if ((cardsHeld & bit) == 0)
+            throw new IllegalArgumentException("PokerBestRank does not hold that card.");
+        cardsHeld &= ~bit;
+        counts[r]--;
+        suitBits[suit] &= ~(1 << r);
+        cardCount--;
+        rank = -1;
+    }
+
+    public void clear() {
+        for (int i = 0; i < 13; i++)
+            counts[i] = 0;
+        for (int i = 0; i < 4; i++)
+            suitBits[i] = 0;
+        cardsHeld = 0;
+        cardCount = 0;
+        rank = -1;
+    }
+
+    public int getCardCount() {
+        return cardCount;
+    }
+
+    /**
+     * Returns the rank of the best hand of at most five of the cards.
+     */
+    public int getRank() {
+        if (rank == -1)
+            rank = computeRank();
+        return rank;
+    }
+
+    public String getDescription() {
+        return PokerRank.describe(getRank());
+    }
+
+    public String getLongDescription() {
+        return PokerRank.describeLong(getRank());
+    }
+
+    public String toString() {
+        return getDescription();
+    }
+
+    private int computeRank() {
+        if (cardCount < 5) {
+            // All of the cards are used.
+            int product = 1;
+            for (int r = 0; r < 13; r++) {
+                for (int i = 0; i < counts[r]; i++)
+                    product *= PokerEvaluator.PRIMES[r];
+            }
+            return PokerEvaluator.rankProduct(product);
+        }
+
+        // With at most seven cards, a flush leaves too few other cards for
+        // four of a kind or a full house, so the best flush is the answer.
+        for (int suit = 0; suit < 4; suit++) {
+            if (Integer.bitCount(suitBits[suit]) >= 5) {
+                int straight = straightBits(suitBits[suit]);
+                if (straight != 0)
+                    return PokerEvaluator.rankDistinct(straight, true);
+                return PokerEvaluator.rankDistinct(topBits(suitBits[suit], 5), true);
+            }
+        }
+
+        int quad = -1, triple = -1, pair1 = -1, pair2 = -1;
+        int valueBits = 0;
+        for (int r = 12; r >= 0; r--) {
+            int ct = counts[r];
+            if (ct == 0)
+                continue;
+            valueBits |= 1 << r;
+            if (ct == 4)
+                quad = r;
+            else if (ct == 3 && triple == -1)
+                triple = r;
+            else if (ct >= 2) {
+                // A second triple can only be used as the pair of a full house.
+                if (pair1 == -1)
+                    pair1 = r;
+                else if (pair2 == -1)
+                    pair2 = r;
+            }
+        }
+
+        if (quad != -1)
+            return PokerEvaluator.rankProduct(pow(quad, 4) * PokerEvaluator.PRIMES[highest(valueBits, quad, -1)]);
+        if (triple != -1 && pair1 != -1)
+            return PokerEvaluator.rankProduct(pow(triple, 3) * pow(pair1, 2));
+        int straight = straightBits(valueBits);
+        if (straight != 0)
+            return PokerEvaluator.rankDistinct(straight, false);
+        if (triple != -1) {
+            int kickers = topBits(valueBits & ~(1 << triple), 2);
+            return PokerEvaluator.rankProduct(pow(triple, 3) * primes(kickers));
+        }
+        if (pair2 != -1) {
+            int kicker = highest(valueBits, pair1, pair2);
+            return PokerEvaluator.rankProduct(pow(pair1, 2) * pow(pair2, 2) * PokerEvaluator.PRIMES[kicker]);
+        }
+        if (pair1 != -1) {
+            int kickers = topBits(valueBits & ~(1 << pair1), 3);
+            return PokerEvaluator.rankProduct(pow(pair1, 2) * primes(kickers));
+        }
+        return PokerEvaluator.rankDistinct(topBits(valueBits, 5), false);
+    }
+
+    /**
+     * Returns the bits of the highest straight in a 13-bit value mask, where the
+     * Ace can also be low, or 0 if there is no straight.
+     */
+    private static int straightBits(int bits) {
+        int run = bits & (bits << 1) & (bits << 2) & (bits << 3) & (bits << 4);
+        if (run != 0) {
+            int high = 31 - Integer.numberOfLeadingZeros(run);
+            return 0x1F << (high - 4);
+        }
+        if ((bits & 0x100F) == 0x100F)
+            return 0x100F; // A wheel, Five down to Ace.
+        return 0;
+    }
+
+    private static int topBits(int bits, int n) {
+        while (Integer.bitCount(bits) > n)
+            bits &= bits - 1; // Clear the lowest bit.
+        return bits;
+    }
+
+    private static int highest(int bits, int skip1, int skip2) {
+        bits &= ~(1 << skip1);
+        if (skip2 != -1)
+            bits &= ~(1 << skip2);
+        return 31 - Integer.numberOfLeadingZeros(bits);
+    }
+
+    private static int pow(int r, int n) {
+        int product = 1;
+        for (int i = 0; i < n; i++)
+            product *= PokerEvaluator.PRIMES[r];
+        return product;
+    }
+
+    private static int primes(int bits) {
+        int product = 1;
+        for (; bits != 0; bits &= bits - 1)
+            product *= PokerEvaluator.PRIMES[Integer.numberOfTrailingZeros(bits)];
+        return product;
+    }
+
+}
@@ -0,0 +1,189 @@
+package fivecarddraw;
+
+import java.util.SplittableRandom;
+
+/**
+ * A deck held as a set of card codes in one long: bit PokerCard.getCode() is
+ * set for each card that is still in the deck. Removing a given card, testing
+ * for one and counting the cards left are single bit operations, and a random
+ * card is dealt by choosing a random index among the set bits and selecting
+ * that bit, so every remaining card is equally likely. Masks of cards can be
+ * combined with the usual &amp;, | and ~ operators; the static methods convert
+ * between masks, cards and codes.
+ * <p>
+ * This is meant for simulations, bots and validators that need to know which
+ * cards are unseen. A PokerBitDeck can be made from the cards that a PokerDeck
+ * has not dealt yet, and turned back into a PokerDeck.
+ */
+public class PokerBitDeck {
+
+    public static final long STANDARD_CARDS = (1L << 52) - 1; // Codes 0 to 51.
+    public static final long ALL_CARDS = (1L << PokerCard.CODE_COUNT) - 1; // Including both Jokers.
+
+    private final SplittableRandom random;
+    private long cards;
+
+    public PokerBitDeck() {
+        this(false);
+    }
+
+    public PokerBitDeck(boolean includeJokers) {
+        this(includeJokers ? ALL_CARDS : STANDARD_CARDS, new SplittableRandom());
+    }
+
+    /**
+     * Creates a deck holding the cards that have not yet been dealt from a
+     * PokerDeck. The PokerDeck is not changed.
+     */
+    public PokerBitDeck(PokerDeck deck) {
+        this(deck.getRemainingCards(), new SplittableRandom());
+    }
+
+    /**
+     * Creates a deck holding the cards in a mask, which deals with the given
+     * random generator. A seeded generator gives a repeatable deal.
+     */
+    public PokerBitDeck(long cards, SplittableRandom random) {
+        if ((cards & ~ALL_CARDS) != 0)
+            throw new IllegalArgumentException("Illegal card mask");
+        this.cards = cards;
+        this.random = random;
+    }
+
+    /**
+     * Returns the mask of the cards left in the deck.
+     */
+    public long getCards() {
+        return cards;
+    }
+
+    public int cardsLeft() {
+        return Long.bitCount(cards);
+    }
+
+    public boolean contains(int code) {
+        return (cards & bit(code)) != 0;
+    }
+
+    public boolean contains(PokerCard card) {
+        return contains(card.getCode());
+    }
+
+    /**
+     * Takes a card out of the deck. Returns false if it was not in the deck.
+     */
+    public boolean remove(int code) {
+        long b = bit(code);
+        boolean present = (cards & b) != 0;
+        cards &= ~b;
+        return present;
+    }
+
+    public boolean remove(PokerCard card) {
+        return remove(card.getCode());
+    }
+
+    /**
+     * Takes all the cards in a mask out of the deck.
+     */
+    public void removeAll(long mask) {
+        cards &= ~mask;
+    }
+
+    /**
+     * Puts a card back into the deck. Returns false if it was already there.
+     */
+    public boolean add(int code) {
+        long b = bit(code);
+        boolean absent = (cards & b) == 0;
+        cards |= b;
+        return absent;
+    }
+
+    public boolean add(PokerCard card) {
+        return add(card.getCode());
+    }
+
+    /**
+     * Removes a random card from the deck and returns its code.
+     */
+    public int dealCode() {
+        int count = Long.bitCount(cards);
+        if (count == 0)
+            throw new IllegalStateException("No cards are left in the deck.");
+        int code = select(cards, random.nextInt(count));
+        cards &= ~(1L << code);
+        return code;
+    }
+
+    /**
+     * Removes a random card from the deck and returns it.
+     */
+    public PokerCard dealCard() {
+        return PokerCard.fromCode(dealCode());
+    }
+
+    /**
+     * Returns a new PokerDeck holding the cards left in this deck, unshuffled.
+     */
+    public PokerDeck toPokerDeck() {
+        return new PokerDeck(cards);
+    }
+
+    /**
+     * Returns the mask holding the given cards.
+     */
+    public static long mask(PokerCard... cards) {
+        long mask = 0;
+        for (PokerCard c : cards)
+            mask |= bit(c.getCode());
+        return mask;
+    }
+
+    /**
+     * Returns the codes of the cards in a mask, in increasing order.
+     */
+    public static int[] toCodes(long mask) {
+        int[] codes = new int[Long.bitCount(mask)];
+        for (int i = 0; mask != 0; i++, mask &= mask - 1)
+            codes[i] = Long.numberOfTrailingZeros(mask);
+        return codes;
+    }
+
+    /**
+     * Returns the cards in a mask, in increasing order of code.
+     */
+    public static PokerCard[] toCards(long mask) {
+        PokerCard[] result = new PokerCard[Long.bitCount(mask)];
+        for (int i = 0; mask != 0; i++, mask &= mask - 1)
+            result[i] = PokerCard.fromCode(Long.numberOfTrailingZeros(mask));
+        return result;
+    }
+
+    /**
+     * Returns the position of the set bit with index n, counting from 0 at the
+     * lowest set bit. The mask must have more than n bits set. The search skips
+     * whole 16-bit blocks by their bit counts, then clears at most 15 bits in
+     * the block that holds the bit.
+     */
+    static int select(long mask, int n) {
+        int shift = 0;
+        for (;; shift += 16) {
+            int block = (int) (mask >>> shift) & 0xFFFF;
+            int count = Integer.bitCount(block);
+            if (n < count) {
+                for (; n > 0; n--)
+                    block &= block - 1; // Clear the lowest bit.
+                return shift + Integer.numberOfTrailingZeros(block);
+            }
+            n -= count;
+        }
+    }
+
+    private static long bit(int code) {
+        if (code < 0 || code >= PokerCard.CODE_COUNT)
+            throw new IllegalArgumentException("Illegal playing card code");
+        return 1L << code;
+    }
+
+}
@@ -2,6 +2,17 @@ package fivecarddraw;
 
 import java.io.Serializable;
 
+/**
+ * A playing card. There is one canonical instance of each card, which can be
+ * obtained with valueOf() or fromCode(); PokerDeck deals only canonical
+ * instances, and deserializing a card gives back the canonical instance, so
+ * cards received over the network do not pile up as garbage. The constructors
+ * still create new objects, which are equal to the canonical ones.
+ * <p>
+ * Every card has an int code: suit*13 + value-2 for the 52 ordinary cards, so
+ * that the cards of a suit are consecutive, and 52 and 53 for the Jokers with
+ * values 1 and 2. The code of a card is also its hash code.
+ */
 public class PokerCard implements Serializable {
 
     public final static int SPADES = 0; // Codes for the 4 suits, plus Joker.
@@ -15,6 +26,19 @@ public class PokerCard implements Serializable {
     public final static int QUEEN = 12; // numerical values for their codes.
     public final static int KING = 13;
 
+    public final static int CODE_COUNT = 54; // Number of card codes, 0 to 53.
+
+    private final static PokerCard[] CARDS = new PokerCard[CODE_COUNT]; // Canonical instances, indexed by code.
+
+    static {
+        for (int suit = SPADES; suit <= CLUBS; suit++) {
+            for (int value = 2; value <= ACE; value++)
+                CARDS[suit * 13 + value - 2] = new PokerCard(value, suit);
+        }
+        CARDS[52] = new PokerCard(1, JOKER);
+        CARDS[53] = new PokerCard(2, JOKER);
+    }
+
     private final int suit;
     private final int value;
     
@@ -33,6 +57,47 @@ public class PokerCard implements Serializable {
         suit = theSuit;
     }
 
+    /**
+     * Returns the canonical instance of the card with the given value and suit.
+     * A Joker must have value 1 or 2.
+     */
+    public static PokerCard valueOf(int value, int suit) {
+        if (suit == JOKER) {
+            if (value != 1 && value != 2)
+                throw new IllegalArgumentException("Only Jokers 1 and 2 have canonical instances");
+            return CARDS[51 + value];
+        }
+        if (suit < SPADES || suit > CLUBS)
+            throw new IllegalArgumentException("Illegal playing card suit");
+        if (value < 2 || value > ACE)
+            throw new IllegalArgumentException("Illegal playing card value");
+        return CARDS[suit * 13 + value - 2];
+    }
+
+    /**
+     * Returns the canonical instance of the card with the given code.
+     */
+    public static PokerCard fromCode(int code) {
+        if (code < 0 || code >= CODE_COUNT)
+            throw new IllegalArgumentException("Illegal playing card code");
+        return CARDS[code];
+    }
+
+    /**
+     * Returns the code of this card, from 0 to 53.
+     *
+     * @throws IllegalStateException if this is a Joker with a value other than
+     * 1 or 2, which has no code.
+     */
+    public int getCode() {
+        if (suit == JOKER) {
+            if (value != 1 && value != 2)
+                throw new IllegalStateException("Joker #" + value + " has no card code");
+            return 51 + value;
+        }
+        return suit * 13 + value - 2;
+    }
+
     public int getSuit() {
         return suit;
     }
@@ -108,4 +173,17 @@ public class PokerCard implements Serializable {
         return (this.suit == that.suit && this.value == that.value);
     }
 
+    public int hashCode() {
+        return suit == JOKER ? 51 + value : suit * 13 + value - 2; // The code, for cards that have one.
+    }
+
+    /**
+     * Replaces a deserialized card with the canonical instance.
+     */
+    private Object readResolve() {
+        if (suit == JOKER && value != 1 && value != 2)
+            return this; // Only Jokers 1 and 2 have canonical instances.
+        return CARDS[getCode()];
+    }
+
 } 
@@ -1,9 +1,40 @@
 package fivecarddraw;
 
+import java.util.SplittableRandom;
 
+/**
+ * A deck of cards that can be shuffled and dealt from. By default, shuffle()
+ * shuffles the whole deck at once. In lazy mode, shuffle() only collects the
+ * dealt cards back into the deck, and each call to dealCard() does one step of
+ * the Fisher-Yates shuffle: it swaps a card chosen uniformly from the cards not
+ * yet dealt into the next position and deals it. That is the same algorithm as
+ * the full shuffle, stopped after as many steps as there are cards dealt, so
+ * the cards are dealt with exactly the same distribution, but a hand that uses
+ * 10 or 20 cards costs 10 or 20 steps instead of 52.
+ * <p>
+ * Once lazy shuffling has been turned on, the deck draws from its own
+ * SplittableRandom instead of the shared Math.random() generator. A deck that
+ * has been given a PokerEntropyPool draws from blocks of SecureRandom output
+ * taken from the pool instead, in either mode.
+ * <p>
+ * A deck can also be given a seed, for instance one per table. Each call to
+ * shuffle() then counts a new hand and derives that hand's random numbers
+ * from the seed and the hand number alone, so the whole sequence of deals can
+ * be reproduced from the seed, and any single hand from the seed and its
+ * number. A seeded deck ignores its entropy pool.
+ */
 public class PokerDeck {
     private PokerCard[] deck;
     private int cardsUsed;
+    private boolean lazyShuffle; // Used by the next call to shuffle().
+    private boolean shuffling; // True while dealCard() is doing the steps of a lazy shuffle.
+    private SplittableRandom random; // Created when lazy shuffling is first turned on, or per hand if seeded.
+    private boolean seeded;
+    private long seed;
+    private long handNumber; // Number of hands shuffled since the seed was set.
+    private PokerEntropyPool entropyPool;
+    private int[] entropy; // The current block from entropyPool.
+    private int entropyUsed; // Number of values used from entropy.
 
     public PokerDeck() {
         this(false); // Just call the other constructor in this class.
@@ -15,30 +46,141 @@ public class PokerDeck {
             deck = new PokerCard[54];
         else
             deck = new PokerCard[52];
-        int cardCt = 0; 
-        for (int suit = 0; suit <= 3; suit++) {
-            for (int value = 2; value <= 14; value++) {
-                deck[cardCt] = new PokerCard(value, suit);
-                cardCt++;
-            }
-        }
-        if (includeJokers) {
-            deck[52] = new PokerCard(1, PokerCard.JOKER);
-            deck[53] = new PokerCard(2, PokerCard.JOKER);
-        }
+        for (int code = 0; code < deck.length; code++)
+            deck[code] = PokerCard.fromCode(code); // Codes 52 and 53 are the Jokers.
+        cardsUsed = 0;
+    }
+
+    /**
+     * Creates a deck holding the cards in a mask of card codes, such as one
+     * from PokerBitDeck, in increasing order of code.
+     */
+    public PokerDeck(long cards) {
+        deck = PokerBitDeck.toCards(cards);
         cardsUsed = 0;
     }
 
+    /**
+     * Puts back any cards that have been dealt and shuffles the deck. In lazy
+     * mode, the shuffling is left to dealCard().
+     */
     public void shuffle() {
-        for (int i = deck.length - 1; i > 0; i--) {
-            int rand = (int) (Math.random() * (i + 1));
-            PokerCard temp = deck[i];
-            deck[i] = deck[rand];
-            deck[rand] = temp;
+        if (seeded) {
+            // Start from the same order every time, so a hand depends only on
+            // its own random numbers and not on how the last hand was dealt.
+            long mask = 0;
+            for (PokerCard c : deck)
+                mask |= 1L << c.getCode();
+            for (int i = 0; mask != 0; i++, mask &= mask - 1)
+                deck[i] = PokerCard.fromCode(Long.numberOfTrailingZeros(mask));
+            handNumber++;
+            random = new SplittableRandom(mix(seed ^ mix(handNumber)));
+        }
+        shuffling = lazyShuffle;
+        if (!shuffling) {
+            for (int i = deck.length - 1; i > 0; i--) {
+                int rand = nextInt(i + 1);
+                PokerCard temp = deck[i];
+                deck[i] = deck[rand];
+                deck[rand] = temp;
+            }
         }
         cardsUsed = 0;
     }
 
+    /**
+     * Turns lazy shuffling on or off, starting with the next call to shuffle().
+     */
+    public void setLazyShuffle(boolean lazy) {
+        if (lazy && random == null)
+            random = new SplittableRandom();
+        lazyShuffle = lazy;
+    }
+
+    public boolean isLazyShuffle() {
+        return lazyShuffle;
+    }
+
+    /**
+     * Makes the deck shuffle with random numbers from a pool, or with its
+     * usual generator if pool is null.
+     */
+    public void setEntropyPool(PokerEntropyPool pool) {
+        entropyPool = pool;
+        entropy = null;
+    }
+
+    /**
+     * Makes the deck reproducible: the next call to shuffle() deals hand
+     * number 1 for this seed.
+     */
+    public void setSeed(long seed) {
+        setSeed(seed, 0);
+    }
+
+    /**
+     * Makes the deck reproducible, as if handsPlayed hands had already been
+     * shuffled with this seed. The next call to shuffle() deals hand number
+     * handsPlayed + 1, which makes it possible to replay one hand of a session.
+     */
+    public void setSeed(long seed, long handsPlayed) {
+        if (handsPlayed < 0)
+            throw new IllegalArgumentException("The number of hands played can't be negative.");
+        this.seed = seed;
+        handNumber = handsPlayed;
+        seeded = true;
+    }
+
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the number of the hand being dealt by a seeded deck, counting
+     * from 1 for the first shuffle after setSeed().
+     */
+    public long getHandNumber() {
+        return handNumber;
+    }
+
+    /**
+     * The 64-bit finalizer of MurmurHash3, which spreads the seed and hand
+     * number over all the bits so that the streams of nearby hands are
+     * unrelated.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * Returns a random int from 0 to bound-1.
+     */
+    private int nextInt(int bound) {
+        if (entropyPool == null || seeded) {
+            if (random != null)
+                return random.nextInt(bound);
+            return (int) (Math.random() * bound);
+        }
+        // Values from the incomplete last stretch of 0..2^32-1 are skipped,
+        // so that each result is exactly equally likely.
+        long limit = (1L << 32) - (1L << 32) % bound;
+        while (true) {
+            if (entropy == null || entropyUsed == entropy.length) {
+                entropy = entropyPool.takeBlock();
+                entropyUsed = 0;
+            }
+            long x = entropy[entropyUsed++] & 0xFFFFFFFFL;
+            if (x < limit)
+                return (int) (x % bound);
+        }
+    }
+
     public int cardsLeft() {
         return deck.length - cardsUsed;
     }
@@ -46,12 +188,33 @@ public class PokerDeck {
     public PokerCard dealCard() {
         if (cardsUsed == deck.length)
             throw new IllegalStateException("No cards are left in the deck.");
+        if (shuffling) {
+            int rand = cardsUsed + nextInt(deck.length - cardsUsed);
+            PokerCard temp = deck[cardsUsed];
+            deck[cardsUsed] = deck[rand];
+            deck[rand] = temp;
+        }
         cardsUsed++;
         return deck[cardsUsed - 1];
     }
 
+    /**
+     * Returns a mask in which bit PokerCard.getCode() is set for each card that
+     * has not been dealt yet.
+     */
+    public long getRemainingCards() {
+        long mask = 0;
+        for (int i = cardsUsed; i < deck.length; i++)
+            mask |= 1L << deck[i].getCode();
+        return mask;
+    }
+
     public boolean hasJokers() {
-        return (deck.length == 54);
+        for (PokerCard c : deck) {
+            if (c.getSuit() == PokerCard.JOKER)
+                return true;
+        }
+        return false;
     }
 
 } 
@@ -0,0 +1,121 @@
+package fivecarddraw;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A precomputed table of the best discard for every five-card starting hand,
+ * stored in a binary file that is memory-mapped when it is loaded. Looking up
+ * a hand takes constant time, the file is only read as its pages are touched,
+ * and processes that map the same file share its pages.
+ * <p>
+ * The table has one entry for each PokerHandIndex, so hands that differ only
+ * by suit share an entry. The file holds a 12-byte header (MAGIC, VERSION and
+ * the number of entries) followed by one int per entry. The high 16 bits of an
+ * entry are the discard mask, as a set of positions in the canonical order
+ * given by PokerHandIndex, and the low 16 bits are the equity of that discard
+ * against a random opponent hand, scaled to 0..65535. That equity comes from
+ * PokerDrawEquity with a random opponent, which treats the opponent's hand
+ * as independent of the cards drawn, so the table is an approximation, and
+ * where two discards are nearly equal the one stored may not be the best.
+ * <p>
+ * Run this class as a program, with the name of the output file as its
+ * argument, to generate the table. Each entry comes from
+ * PokerDrawEquity.best(), so generation takes a long time, but it only has to
+ * be done once.
+ */
+public class PokerDiscardTable {
+
+    public static final int MAGIC = 0x504B4454; // "PKDT"
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+
+    private final ByteBuffer entries;
+
+    private PokerDiscardTable(ByteBuffer entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Maps a table file into memory.
+     *
+     * @throws IOException if the file cannot be read or is not a discard table.
+     */
+    public static PokerDiscardTable load(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() != HEADER_SIZE + 4L * PokerHandIndex.SIZE || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION || buffer.getInt(8) != PokerHandIndex.SIZE)
+                throw new IOException("File " + file + " is not a discard table.");
+            return new PokerDiscardTable(buffer);
+        }
+    }
+
+    /**
+     * Returns the best discard for a hand, as a mask in which bit i is set if
+     * hand[i] should be discarded.
+     */
+    public int getBestDiscard(PokerCard[] hand) {
+        int[] order = new int[5];
+        int entry = entry(PokerHandIndex.index(hand, order));
+        int canonicalMask = entry >>> 16;
+        int mask = 0;
+        for (int j = 0; j < 5; j++) {
+            if ((canonicalMask & 1 << j) != 0)
+                mask |= 1 << order[j];
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the equity of the best discard for a hand against a random
+     * opponent hand.
+     */
+    public double getEquity(PokerCard[] hand) {
+        return (entry(PokerHandIndex.index(hand, null)) & 0xFFFF) / 65535.0;
+    }
+
+    private int entry(int index) {
+        return entries.getInt(HEADER_SIZE + 4 * index);
+    }
+
+    /**
+     * Computes the table and writes it to a file. The equity calculations for
+     * each hand run in parallel on the given pool.
+     */
+    public static void generate(File file, ForkJoinPool pool) throws IOException {
+        PokerDrawEquity equity = new PokerDrawEquity(pool);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + 4L * PokerHandIndex.SIZE);
+            for (int index = 0; index < PokerHandIndex.SIZE; index++) {
+                // The hand from unindex() is already in canonical order.
+                PokerDrawEquity.Result best = equity.best(PokerHandIndex.unindex(index), null);
+                int scaled = (int) Math.round(best.getEquity() * 65535);
+                buffer.putInt(HEADER_SIZE + 4 * index, best.discardMask << 16 | scaled);
+                if (index % 1000 == 0)
+                    System.out.println("Computed " + index + " of " + PokerHandIndex.SIZE + " hands.");
+            }
+            // The header goes in last, so an interrupted run does not leave a valid-looking file.
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, PokerHandIndex.SIZE);
+            buffer.force();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: java fivecarddraw.PokerDiscardTable <output file>");
+            return;
+        }
+        generate(new File(args[0]), ForkJoinPool.commonPool());
+    }
+
+}
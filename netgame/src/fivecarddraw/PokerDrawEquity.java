@@ -0,0 +1,330 @@
+package fivecarddraw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the expected result of every possible discard for a five-card
+ * draw hand: exactly when the opponent's hand is given, and approximately,
+ * as described below, when it is random. For each of the 32 discard masks,
+ * every set of replacement cards that could be drawn from the unseen cards
+ * is enumerated and ranked with PokerEvaluator, which gives the same ranks
+ * as PokerRank. The enumeration is split recursively over a ForkJoinPool.
+ * <p>
+ * In a discard mask, bit i is set if hand[i] is discarded, which matches the
+ * card numbers that PokerWindow sends to PokerHub. The opponent's hand can be
+ * given, in which case its cards are not available to be drawn and it is
+ * compared as it stands. If it is null, the opponent holds a random hand of
+ * five of the cards that the player has not seen; that hand is treated as
+ * independent of the player's replacement cards, so the small effect of the
+ * player drawing a card that would otherwise have been in the opponent's
+ * hand is ignored.
+ */
+public class PokerDrawEquity {
+
+    /**
+     * The outcome of one discard mask. The fractions add up to 1.
+     */
+    public static final class Result {
+
+        public final int discardMask; // Bit i is set if card i is discarded.
+        public final double win;
+        public final double tie;
+        public final double loss;
+
+        Result(int discardMask, double win, double tie, double loss) {
+            this.discardMask = discardMask;
+            this.win = win;
+            this.tie = tie;
+            this.loss = loss;
+        }
+
+        /**
+         * Returns the share of the pot that this discard wins on average,
+         * counting a tie as half.
+         */
+        public double getEquity() {
+            return win + tie / 2;
+        }
+
+        public String toString() {
+            return String.format("discard %5s: win %.4f, tie %.4f, loss %.4f", Integer.toBinaryString(discardMask),
+                    win, tie, loss);
+        }
+    }
+
+    private final ForkJoinPool pool;
+
+    public PokerDrawEquity() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public PokerDrawEquity(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the result of each of the 32 discard masks, indexed by mask.
+     *
+     * @param hand the player's five cards.
+     * @param opponentHand the opponent's five cards, or null for a random hand.
+     */
+    public Result[] evaluateAll(PokerCard[] hand, PokerCard[] opponentHand) {
+        Setup s = new Setup(hand, opponentHand);
+        List<DrawTask> tasks = new ArrayList<DrawTask>();
+        for (int mask = 0; mask < 32; mask++)
+            tasks.add(s.task(mask));
+        pool.invoke(new RecursiveAction() {
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        Result[] results = new Result[32];
+        for (int mask = 0; mask < 32; mask++)
+            results[mask] = s.result(mask, tasks.get(mask).join());
+        return results;
+    }
+
+    /**
+     * Returns the result of a single discard mask.
+     */
+    public Result evaluate(PokerCard[] hand, int discardMask, PokerCard[] opponentHand) {
+        if (discardMask < 0 || discardMask > 31)
+            throw new IllegalArgumentException("Illegal discard mask.");
+        Setup s = new Setup(hand, opponentHand);
+        return s.result(discardMask, pool.invoke(s.task(discardMask)));
+    }
+
+    /**
+     * Returns the result of the discard mask with the highest equity.
+     */
+    public Result best(PokerCard[] hand, PokerCard[] opponentHand) {
+        Result best = null;
+        for (Result r : evaluateAll(hand, opponentHand)) {
+            if (best == null || r.getEquity() > best.getEquity())
+                best = r;
+        }
+        return best;
+    }
+
+    /**
+     * Holds the packed cards for one evaluation and, for a random opponent,
+     * how many of the hands the opponent might hold have each rank.
+     */
+    private class Setup {
+
+        final int[] packedHand = new int[5];
+        final int[] unseen; // Packed cards that can still be drawn.
+        final int opponentRank; // Used when opponentRanks is null.
+        final int[] opponentRanks; // Distinct ranks of the possible opponent hands, in ascending order.
+        final long[] opponentsBelow; // opponentsBelow[i] is the number of those hands ranked below opponentRanks[i].
+
+        Setup(PokerCard[] hand, PokerCard[] opponentHand) {
+            if (hand == null || hand.length != 5)
+                throw new IllegalArgumentException("The hand must contain five cards.");
+            if (opponentHand != null && opponentHand.length != 5)
+                throw new IllegalArgumentException("The opponent's hand must contain five cards.");
+            long seen = 0; // Bit PokerCard.getCode() is set for each card that cannot be drawn.
+            for (int i = 0; i < 5; i++) {
+                packedHand[i] = PokerEvaluator.pack(hand[i]);
+                seen |= 1L << hand[i].getCode();
+            }
+            if (opponentHand != null) {
+                for (PokerCard c : opponentHand)
+                    seen |= 1L << c.getCode();
+            }
+            if (Long.bitCount(seen) != (opponentHand == null ? 5 : 10))
+                throw new IllegalArgumentException("The same card appears more than once.");
+            unseen = new int[52 - Long.bitCount(seen)];
+            int n = 0;
+            for (int suit = 0; suit <= 3; suit++) {
+                for (int value = 2; value <= 14; value++) {
+                    if ((seen & 1L << (suit * 13 + value - 2)) == 0)
+                        unseen[n++] = PokerEvaluator.pack(value, suit);
+                }
+            }
+            if (opponentHand != null) {
+                opponentRank = PokerEvaluator.rank(opponentHand);
+                opponentRanks = null;
+                opponentsBelow = null;
+            } else {
+                // Collapse the sorted ranks of all possible hands into distinct
+                // ranks and counts, which is small enough to search quickly.
+                int[] all = pool.invoke(new OpponentTask(unseen));
+                int distinct = 0;
+                for (int i = 0; i < all.length; i++) {
+                    if (i == 0 || all[i] != all[i - 1])
+                        distinct++;
+                }
+                opponentRank = 0;
+                opponentRanks = new int[distinct];
+                opponentsBelow = new long[distinct + 1];
+                int d = 0;
+                for (int i = 0; i < all.length; i++) {
+                    if (i == 0 || all[i] != all[i - 1]) {
+                        opponentRanks[d] = all[i];
+                        opponentsBelow[d++] = i;
+                    }
+                }
+                opponentsBelow[distinct] = all.length;
+            }
+        }
+
+        DrawTask task(int mask) {
+            int k = Integer.bitCount(mask);
+            int[] kept = new int[5 - k];
+            int n = 0;
+            for (int i = 0; i < 5; i++) {
+                if ((mask & 1 << i) == 0)
+                    kept[n++] = packedHand[i];
+            }
+            return new DrawTask(this, kept, k, 0, k == 0 ? 1 : unseen.length - k + 1);
+        }
+
+        Result result(int mask, long[] counts) {
+            double total = counts[0] + counts[1] + counts[2];
+            return new Result(mask, counts[0] / total, counts[1] / total, counts[2] / total);
+        }
+    }
+
+    /**
+     * Counts wins, ties and losses over all draws whose first replacement card
+     * is unseen[from] to unseen[to-1], splitting the range while it is big.
+     */
+    private static class DrawTask extends RecursiveTask<long[]> {
+
+        private final Setup setup;
+        private final int[] kept;
+        private final int drawCount;
+        private final int from, to;
+
+        DrawTask(Setup setup, int[] kept, int drawCount, int from, int to) {
+            this.setup = setup;
+            this.kept = kept;
+            this.drawCount = drawCount;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected long[] compute() {
+            if (drawCount >= 3 && to - from > 1) {
+                int mid = (from + to) >>> 1;
+                DrawTask left = new DrawTask(setup, kept, drawCount, from, mid);
+                left.fork();
+                long[] right = new DrawTask(setup, kept, drawCount, mid, to).compute();
+                long[] counts = left.join();
+                for (int i = 0; i < 3; i++)
+                    counts[i] += right[i];
+                return counts;
+            }
+            long[] counts = new long[3];
+            int[] cards = new int[5];
+            System.arraycopy(kept, 0, cards, 0, kept.length);
+            if (drawCount == 0) {
+                count(cards, counts);
+                return counts;
+            }
+            for (int i = from; i < to; i++) {
+                cards[kept.length] = setup.unseen[i];
+                draw(cards, kept.length + 1, i + 1, counts);
+            }
+            return counts;
+        }
+
+        private void draw(int[] cards, int filled, int start, long[] counts) {
+            if (filled == 5) {
+                count(cards, counts);
+                return;
+            }
+            int[] unseen = setup.unseen;
+            for (int i = start; i <= unseen.length - (5 - filled); i++) {
+                cards[filled] = unseen[i];
+                draw(cards, filled + 1, i + 1, counts);
+            }
+        }
+
+        private void count(int[] cards, long[] counts) {
+            int rank = PokerEvaluator.rank(cards[0], cards[1], cards[2], cards[3], cards[4]);
+            int[] opponentRanks = setup.opponentRanks;
+            if (opponentRanks == null) {
+                if (rank > setup.opponentRank)
+                    counts[0]++;
+                else if (rank == setup.opponentRank)
+                    counts[1]++;
+                else
+                    counts[2]++;
+            } else {
+                long[] below = setup.opponentsBelow;
+                int i = firstIndexAtLeast(opponentRanks, rank);
+                int j = i < opponentRanks.length && opponentRanks[i] == rank ? i + 1 : i;
+                counts[0] += below[i];
+                counts[1] += below[j] - below[i];
+                counts[2] += below[opponentRanks.length] - below[j];
+            }
+        }
+
+        private static int firstIndexAtLeast(int[] sorted, int key) {
+            int lo = 0, hi = sorted.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sorted[mid] < key)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * Ranks every five-card hand that can be made from the given cards and
+     * returns the ranks in ascending order. Hands are grouped by their first
+     * card, and each group is ranked by a separate subtask.
+     */
+    private static class OpponentTask extends RecursiveTask<int[]> {
+
+        private final int[] cards;
+
+        OpponentTask(int[] cards) {
+            this.cards = cards;
+        }
+
+        protected int[] compute() {
+            int n = cards.length;
+            int[] ranks = new int[choose(n, 5)];
+            List<RecursiveAction> groups = new ArrayList<RecursiveAction>();
+            int offset = 0;
+            for (int first = 0; first <= n - 5; first++) {
+                final int f = first;
+                final int start = offset;
+                groups.add(new RecursiveAction() {
+                    protected void compute() {
+                        int pos = start;
+                        int c1 = cards[f];
+                        for (int b = f + 1; b < n; b++)
+                            for (int c = b + 1; c < n; c++)
+                                for (int d = c + 1; d < n; d++)
+                                    for (int e = d + 1; e < n; e++)
+                                        ranks[pos++] = PokerEvaluator.rank(c1, cards[b], cards[c], cards[d], cards[e]);
+                    }
+                });
+                offset += choose(n - first - 1, 4);
+            }
+            invokeAll(groups);
+            Arrays.parallelSort(ranks);
+            return ranks;
+        }
+
+        private static int choose(int n, int k) {
+            long c = 1;
+            for (int i = 0; i < k; i++)
+                c = c * (n - i) / (i + 1);
+            return (int) c;
+        }
+    }
+
+}
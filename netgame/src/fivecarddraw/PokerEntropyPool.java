@@ -0,0 +1,174 @@
+package fivecarddraw;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A pool of random numbers from a SecureRandom, generated ahead of time by a
+ * background thread so that shuffling with a secure generator does not slow
+ * down the thread that deals. The numbers are handed out in blocks, which a
+ * PokerDeck keeps and turns into the indices of its shuffle one at a time, so
+ * decks only touch the pool once per block.
+ * <p>
+ * Filled blocks are kept in a ring that is lock-free for the decks taking
+ * them: a deck claims the next block by advancing the head with a
+ * compare-and-set. The background thread only refills a slot once the block
+ * in it has been taken. When the ring is full it parks until a deck has taken
+ * half of it, so an idle pool costs nothing. If a deck finds the
+ * ring empty, the pool has run dry; the deck then gets a block generated on
+ * its own thread, which is slow but just as secure, and the event is counted
+ * and reported.
+ */
+public class PokerEntropyPool {
+
+    public static final int BLOCK_SIZE = 64; // Random ints per block.
+
+    private static final long REPORT_INTERVAL = 10000; // Milliseconds between reports of running dry.
+
+    private static PokerEntropyPool shared;
+
+    private final SecureRandom random;
+    private final AtomicReferenceArray<int[]> ring;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // Number of blocks taken from the ring.
+    private volatile long tail; // Number of blocks put into the ring.
+    private final Thread fillThread;
+    private volatile boolean shutdown;
+
+    private final AtomicLong blocksTaken = new AtomicLong();
+    private final AtomicLong dryCount = new AtomicLong();
+    private volatile long lastReport;
+
+    /**
+     * Creates a pool holding up to 1024 blocks, filled from a new SecureRandom.
+     */
+    public PokerEntropyPool() {
+        this(new SecureRandom(), 1024);
+    }
+
+    /**
+     * Creates a pool and starts its background thread.
+     *
+     * @param random the source of the random numbers.
+     * @param capacity the number of blocks that the ring holds, a power of 2.
+     */
+    public PokerEntropyPool(SecureRandom random, int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("The capacity must be a power of 2.");
+        this.random = random;
+        ring = new AtomicReferenceArray<int[]>(capacity);
+        mask = capacity - 1;
+        fillThread = new Thread("PokerEntropyPool") {
+            public void run() {
+                fill();
+            }
+        };
+        fillThread.setDaemon(true);
+        fillThread.start();
+    }
+
+    /**
+     * Returns a pool shared by every table in this program, creating it the
+     * first time it is needed.
+     */
+    synchronized public static PokerEntropyPool getShared() {
+        if (shared == null)
+            shared = new PokerEntropyPool();
+        return shared;
+    }
+
+    /**
+     * Takes a block of BLOCK_SIZE random ints. The caller owns the block.
+     */
+    public int[] takeBlock() {
+        while (true) {
+            long h = head.get();
+            if (h >= tail) {
+                reportDry();
+                return newBlock();
+            }
+            if (head.compareAndSet(h, h + 1)) {
+                // The block for index h was published before tail moved past
+                // h, and its slot is not refilled until it is taken here.
+                int[] block = ring.getAndSet((int) h & mask, null);
+                blocksTaken.incrementAndGet();
+                if (tail - h <= (mask + 1) / 2)
+                    LockSupport.unpark(fillThread); // Start refilling at half full.
+                return block;
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread. Blocks that are taken after this are
+     * generated on the thread that takes them.
+     */
+    public void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(fillThread);
+    }
+
+    /**
+     * Returns the number of filled blocks waiting in the ring.
+     */
+    public int getAvailableBlocks() {
+        return (int) Math.max(0, tail - head.get());
+    }
+
+    /**
+     * Returns the number of blocks taken from the ring.
+     */
+    public long getBlocksTaken() {
+        return blocksTaken.get();
+    }
+
+    /**
+     * Returns the number of times a block was asked for while the ring was
+     * empty.
+     */
+    public long getDryCount() {
+        return dryCount.get();
+    }
+
+    private int[] newBlock() {
+        int[] block = new int[BLOCK_SIZE];
+        for (int i = 0; i < BLOCK_SIZE; i++)
+            block[i] = random.nextInt();
+        return block;
+    }
+
+    private void fill() {
+        while (!shutdown) {
+            long t = tail;
+            if (t - head.get() > mask) {
+                // Full. takeBlock() wakes this thread once half the ring is
+                // taken, and the permit is kept if that happens before parking.
+                LockSupport.park(this);
+                continue;
+            }
+            int slot = (int) t & mask;
+            if (ring.get(slot) != null) {
+                // The block in this slot has been claimed but not yet taken,
+                // which its taker is about to do.
+                LockSupport.parkNanos(this, 10000);
+                continue;
+            }
+            ring.set(slot, newBlock());
+            tail = t + 1;
+        }
+    }
+
+    private void reportDry() {
+        long count = dryCount.incrementAndGet();
+        long now = System.currentTimeMillis();
+        if (now - lastReport >= REPORT_INTERVAL) {
+            lastReport = now;
+            System.out.println("PokerEntropyPool ran dry: " + count + " of " + (count + blocksTaken.get())
+                    + " blocks have been generated on demand.");
+        }
+        LockSupport.unpark(fillThread);
+    }
+
+}
@@ -0,0 +1,211 @@
+package fivecarddraw;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Estimates by random sampling the share of the pot that a five-card draw
+ * hand wins, after a given discard, against one or more opponents who each
+ * hold five random cards. Where PokerDrawEquity enumerates every draw against
+ * one opponent, this class samples, so it handles several opponents and stops
+ * as soon as the estimate is good enough.
+ * <p>
+ * Sampling runs in rounds on a parallel stream over a fixed set of workers.
+ * Each worker owns a SplittableRandom split from the estimator's generator and
+ * its own array of unseen cards, which it partially shuffles for each trial,
+ * so no random generator or deck is shared between threads. After each round
+ * the results are combined, and sampling stops when the 95% confidence
+ * interval for the equity is narrower than the width asked for.
+ */
+public class PokerEquityEstimator {
+
+    private static final double Z_95 = 1.959964; // Normal quantile for a two-sided 95% interval.
+    private static final int TRIALS_PER_ROUND = 2048; // Trials run by each worker between checks.
+
+    /**
+     * The estimate produced by a call to estimate().
+     */
+    public static final class Estimate {
+
+        public final int discardMask; // Bit i is set if card i is discarded.
+        public final int opponents;
+        public final long trials;
+        public final double win; // Fraction of trials won outright.
+        public final double tie; // Fraction of trials in which the best hands tied.
+        public final double equity; // Average share of the pot won, with ties split.
+        public final double halfWidth; // Half the width of the 95% confidence interval for equity.
+
+        Estimate(int discardMask, int opponents, long trials, double win, double tie, double equity,
+                double halfWidth) {
+            this.discardMask = discardMask;
+            this.opponents = opponents;
+            this.trials = trials;
+            this.win = win;
+            this.tie = tie;
+            this.equity = equity;
+            this.halfWidth = halfWidth;
+        }
+
+        public String toString() {
+            return String.format("discard %5s vs %d: equity %.4f +/- %.4f (win %.4f, tie %.4f, %d trials)",
+                    Integer.toBinaryString(discardMask), opponents, equity, halfWidth, win, tie, trials);
+        }
+    }
+
+    private final SplittableRandom random;
+    private final int workerCount;
+
+    public PokerEquityEstimator() {
+        this(new SplittableRandom());
+    }
+
+    /**
+     * Creates an estimator whose workers draw from streams split from the
+     * given generator, so a seeded generator gives repeatable estimates for a
+     * fixed number of workers.
+     */
+    public PokerEquityEstimator(SplittableRandom random) {
+        this(random, Runtime.getRuntime().availableProcessors());
+    }
+
+    public PokerEquityEstimator(SplittableRandom random, int workerCount) {
+        if (workerCount < 1)
+            throw new IllegalArgumentException("There must be at least one worker.");
+        this.random = random;
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Estimates equity as below, running at most ten million trials.
+     */
+    public Estimate estimate(PokerCard[] hand, int discardMask, int opponents, double maxWidth) {
+        return estimate(hand, discardMask, opponents, maxWidth, 10000000);
+    }
+
+    /**
+     * Estimates the equity of a hand after discarding the cards in discardMask
+     * and drawing replacements, against the given number of opponents.
+     *
+     * @param hand the player's five cards.
+     * @param discardMask bit i is set if hand[i] is discarded.
+     * @param opponents the number of opponents, each holding five random cards.
+     * @param maxWidth sampling stops once the 95% confidence interval for the
+     * equity is narrower than this.
+     * @param maxTrials sampling stops after about this many trials in any case.
+     */
+    public Estimate estimate(PokerCard[] hand, int discardMask, int opponents, double maxWidth, long maxTrials) {
+        if (hand == null || hand.length != 5)
+            throw new IllegalArgumentException("The hand must contain five cards.");
+        if (discardMask < 0 || discardMask > 31)
+            throw new IllegalArgumentException("Illegal discard mask.");
+        int drawCount = Integer.bitCount(discardMask);
+        if (opponents < 1 || drawCount + 5 * opponents > 47)
+            throw new IllegalArgumentException("There are not enough cards for " + opponents + " opponents.");
+        long seen = 0; // Bit PokerCard.getCode() is set for each card in the hand.
+        int[] kept = new int[5 - drawCount];
+        int n = 0;
+        for (int i = 0; i < 5; i++) {
+            seen |= 1L << hand[i].getCode();
+            if ((discardMask & 1 << i) == 0)
+                kept[n++] = PokerEvaluator.pack(hand[i]);
+        }
+        if (Long.bitCount(seen) != 5)
+            throw new IllegalArgumentException("The same card appears more than once.");
+
+        Worker[] workers = new Worker[workerCount];
+        synchronized (random) {
+            for (int i = 0; i < workerCount; i++)
+                workers[i] = new Worker(random.split(), seen, kept, opponents);
+        }
+        long trials = 0;
+        long wins = 0, ties = 0;
+        double sum = 0, sumOfSquares = 0;
+        double halfWidth = Double.POSITIVE_INFINITY;
+        while (trials < maxTrials && 2 * halfWidth > maxWidth) {
+            IntStream.range(0, workerCount).parallel().forEach(i -> workers[i].run(TRIALS_PER_ROUND));
+            trials = wins = ties = 0;
+            sum = sumOfSquares = 0;
+            for (Worker w : workers) {
+                trials += w.trials;
+                wins += w.wins;
+                ties += w.ties;
+                sum += w.sum;
+                sumOfSquares += w.sumOfSquares;
+            }
+            double mean = sum / trials;
+            double variance = Math.max(0, sumOfSquares / trials - mean * mean);
+            halfWidth = Z_95 * Math.sqrt(variance / trials);
+        }
+        return new Estimate(discardMask, opponents, trials, (double) wins / trials, (double) ties / trials,
+                sum / trials, halfWidth);
+    }
+
+    /**
+     * One worker's random stream, private deck and running totals. A worker is
+     * only used by one thread at a time.
+     */
+    private static class Worker {
+
+        private final SplittableRandom random;
+        private final int[] deck; // Packed unseen cards, in whatever order the last trial left them.
+        private final int[] cards = new int[5];
+        private final int[] kept;
+        private final int opponents;
+        long trials, wins, ties;
+        double sum, sumOfSquares;
+
+        Worker(SplittableRandom random, long seen, int[] kept, int opponents) {
+            this.random = random;
+            this.kept = kept;
+            this.opponents = opponents;
+            deck = new int[52 - Long.bitCount(seen)];
+            int n = 0;
+            for (int suit = 0; suit <= 3; suit++) {
+                for (int value = 2; value <= 14; value++) {
+                    if ((seen & 1L << (suit * 13 + value - 2)) == 0)
+                        deck[n++] = PokerEvaluator.pack(value, suit);
+                }
+            }
+        }
+
+        void run(int count) {
+            int drawCount = 5 - kept.length;
+            int needed = drawCount + 5 * opponents;
+            for (int t = 0; t < count; t++) {
+                // Move a random selection of the needed cards to the front of the deck.
+                for (int i = 0; i < needed; i++) {
+                    int j = i + random.nextInt(deck.length - i);
+                    int temp = deck[i];
+                    deck[i] = deck[j];
+                    deck[j] = temp;
+                }
+                System.arraycopy(kept, 0, cards, 0, kept.length);
+                System.arraycopy(deck, 0, cards, kept.length, drawCount);
+                int rank = PokerEvaluator.rank(cards[0], cards[1], cards[2], cards[3], cards[4]);
+                int best = -1;
+                int bestCount = 0; // Number of opponents holding the best opponent hand.
+                for (int o = 0, d = drawCount; o < opponents; o++, d += 5) {
+                    int r = PokerEvaluator.rank(deck[d], deck[d + 1], deck[d + 2], deck[d + 3], deck[d + 4]);
+                    if (r > best) {
+                        best = r;
+                        bestCount = 1;
+                    } else if (r == best)
+                        bestCount++;
+                }
+                double share;
+                if (rank > best) {
+                    wins++;
+                    share = 1;
+                } else if (rank == best) {
+                    ties++;
+                    share = 1.0 / (bestCount + 1);
+                } else
+                    share = 0;
+                trials++;
+                sum += share;
+                sumOfSquares += share * share;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,333 @@
+package fivecarddraw;
+
+/**
+ * An allocation-free evaluator for poker hands of up to five cards. It returns
+ * exactly the same rank as PokerRank.getRank(), that is the hand type shifted
+ * left by 20 bits, followed by one 4-bit nibble for the value of each card in
+ * the order that the hand is read (for example, the triple before the kickers).
+ * <p>
+ * Cards are first packed into ints with pack(). A packed card holds a bit for
+ * its value, a bit for its suit, its value, and a distinct prime number for its
+ * value:
+ * <pre>
+ *     xxxbbbbb bbbbbbbb cdhsrrrr xxpppppp
+ * </pre>
+ * Flushes and hands with five distinct values are then found in tables indexed
+ * by the 13-bit OR of the value bits. Every other hand is found by the product
+ * of its primes, which is unique for each multiset of values, in an
+ * open-addressed hash table. All tables are built once when the class is
+ * loaded. Hands are assumed to come from a single deck without jokers.
+ */
+public final class PokerEvaluator {
+
+    static final int[] PRIMES = { 2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41 }; // Indexed by value-2.
+
+    private static final int[] PACKED = new int[52]; // Indexed by suit*13 + value-2.
+    /**
+     * Ranks of hands with five distinct values, indexed by the value bits, with
+     * FLUSH_BIT added to the index for flushes. A zero entry means the hand does
+     * not have five distinct values. Keeping both halves in one table lets the
+     * batch methods select the flush half without a branch.
+     */
+    private static final int[] DISTINCT = new int[2 << 13];
+    private static final int FLUSH_BIT = 1 << 13;
+    private static final int BATCH_SIZE = 256; // Hands ranked per pass by the batch methods.
+
+    private static final int HASH_BITS = 14;
+    private static final int[] productKeys = new int[1 << HASH_BITS]; // Prime products; 0 marks an empty slot.
+    private static final int[] productRanks = new int[1 << HASH_BITS];
+
+    static {
+        for (int suit = 0; suit <= 3; suit++) {
+            for (int value = 2; value <= 14; value++) {
+                int r = value - 2;
+                PACKED[suit * 13 + r] = (1 << (16 + r)) | (1 << (12 + suit)) | (r << 8) | PRIMES[r];
+            }
+        }
+        buildTables(new int[13], 12, 0);
+    }
+
+    private PokerEvaluator() {
+    }
+
+    /**
+     * Returns the packed int for a card with the given value (2 to 14) and suit.
+     */
+    public static int pack(int value, int suit) {
+        if (suit < PokerCard.SPADES || suit > PokerCard.CLUBS)
+            throw new IllegalArgumentException("PokerEvaluator does not support jokers.");
+        if (value < 2 || value > 14)
+            throw new IllegalArgumentException("Illegal playing card value");
+        return PACKED[suit * 13 + value - 2];
+    }
+
+    public static int pack(PokerCard card) {
+        return pack(card.getValue(), card.getSuit());
+    }
+
+    /**
+     * Ranks a hand of five packed cards.
+     */
+    public static int rank(int c1, int c2, int c3, int c4, int c5) {
+        int q = (c1 | c2 | c3 | c4 | c5) >>> 16;
+        if ((c1 & c2 & c3 & c4 & c5 & 0xF000) != 0) {
+            int r = DISTINCT[FLUSH_BIT | q];
+            if (r != 0)
+                return r;
+        }
+        int r = DISTINCT[q];
+        if (r != 0)
+            return r;
+        return lookup((c1 & 0xFF) * (c2 & 0xFF) * (c3 & 0xFF) * (c4 & 0xFF) * (c5 & 0xFF));
+    }
+
+    /**
+     * Ranks the first count packed cards in the array, where count is 0 to 5.
+     */
+    public static int rank(int[] cards, int count) {
+        if (count == 5)
+            return rank(cards[0], cards[1], cards[2], cards[3], cards[4]);
+        if (count < 0 || count > 5)
+            throw new IllegalArgumentException("PokerEvaluator does not support hands with more than five cards.");
+        int product = 1;
+        for (int i = 0; i < count; i++)
+            product *= cards[i] & 0xFF;
+        return lookup(product);
+    }
+
+    /**
+     * Ranks a hand of up to five cards without packing it into an array first.
+     */
+    public static int rank(PokerCard[] hand) {
+        if (hand.length > 5)
+            throw new IllegalArgumentException("PokerEvaluator does not support hands with more than five cards.");
+        int and = -1;
+        int or = 0;
+        int product = 1;
+        for (PokerCard c : hand) {
+            int p = pack(c);
+            and &= p;
+            or |= p;
+            product *= p & 0xFF;
+        }
+        if (hand.length == 5) {
+            int q = or >>> 16;
+            if ((and & 0xF000) != 0 && DISTINCT[FLUSH_BIT | q] != 0)
+                return DISTINCT[FLUSH_BIT | q];
+            if (DISTINCT[q] != 0)
+                return DISTINCT[q];
+        }
+        return lookup(product);
+    }
+
+    /**
+     * Ranks many five-card hands at once. The cards array holds five packed
+     * cards for each hand, one hand after another, and the rank of hand i is
+     * stored in ranks[i]. Hands are processed in blocks: a first pass computes
+     * the value bits, flush flag and prime product of every hand in the block
+     * with straight-line integer code, and a second pass does the table
+     * lookups, so the arithmetic is not interleaved with lookup branches.
+     */
+    public static void rankAll(int[] cards, int[] ranks) {
+        if (cards.length < 5 * ranks.length)
+            throw new IllegalArgumentException("Five cards are needed for each hand.");
+        int[] index = new int[BATCH_SIZE];
+        int[] product = new int[BATCH_SIZE];
+        for (int start = 0; start < ranks.length; start += BATCH_SIZE) {
+            int count = Math.min(BATCH_SIZE, ranks.length - start);
+            for (int i = 0, c = 5 * start; i < count; i++, c += 5) {
+                int c1 = cards[c], c2 = cards[c + 1], c3 = cards[c + 2], c4 = cards[c + 3], c5 = cards[c + 4];
+                int suited = c1 & c2 & c3 & c4 & c5 & 0xF000; // Non-zero only for a flush.
+                index[i] = ((c1 | c2 | c3 | c4 | c5) >>> 16) | ((-suited >>> 31) << 13);
+                product[i] = (c1 & 0xFF) * (c2 & 0xFF) * (c3 & 0xFF) * (c4 & 0xFF) * (c5 & 0xFF);
+            }
+            for (int i = 0; i < count; i++) {
+                int r = DISTINCT[index[i]];
+                ranks[start + i] = r != 0 ? r : lookup(product[i]);
+            }
+        }
+    }
+
+    /**
+     * Ranks many five-card hands at once, where each hand is a 52-bit mask
+     * with bit suit*13 + value-2 set for each of its five cards. The rank of
+     * hands[i] is stored in ranks[i].
+     */
+    public static void rankAll(long[] hands, int[] ranks) {
+        if (hands.length < ranks.length)
+            throw new IllegalArgumentException("There must be a hand for each rank.");
+        int[] index = new int[BATCH_SIZE];
+        for (int start = 0; start < ranks.length; start += BATCH_SIZE) {
+            int count = Math.min(BATCH_SIZE, ranks.length - start);
+            for (int i = 0; i < count; i++) {
+                long h = hands[start + i];
+                int s0 = (int) h & 0x1FFF;
+                int s1 = (int) (h >>> 13) & 0x1FFF;
+                int s2 = (int) (h >>> 26) & 0x1FFF;
+                int s3 = (int) (h >>> 39) & 0x1FFF;
+                int q = s0 | s1 | s2 | s3;
+                // A flush has all of its value bits in one suit, so exactly one suit is non-zero.
+                int suits = (-s0 >>> 31) + (-s1 >>> 31) + (-s2 >>> 31) + (-s3 >>> 31);
+                index[i] = q | ((suits & 1) & (~suits >>> 1 & 1)) << 13;
+            }
+            for (int i = 0; i < count; i++) {
+                long h = hands[start + i];
+                if (Long.bitCount(h) != 5 || (h >>> 52) != 0)
+                    throw new IllegalArgumentException("Each hand must hold five cards.");
+                int r = DISTINCT[index[i]];
+                if (r == 0) {
+                    int product = 1;
+                    for (; h != 0; h &= h - 1)
+                        product *= PRIMES[Long.numberOfTrailingZeros(h) % 13];
+                    r = lookup(product);
+                }
+                ranks[start + i] = r;
+            }
+        }
+    }
+
+    /**
+     * Ranks five cards of distinct values, given as a 13-bit mask with bit
+     * value-2 set for each card.
+     */
+    static int rankDistinct(int valueBits, boolean flush) {
+        return DISTINCT[flush ? FLUSH_BIT | valueBits : valueBits];
+    }
+
+    /**
+     * Ranks up to five cards, not all of distinct values when there are five,
+     * given as the product of the primes for their values.
+     */
+    static int rankProduct(int product) {
+        return lookup(product);
+    }
+
+    private static int lookup(int product) {
+        int mask = productKeys.length - 1;
+        for (int i = hash(product); ; i = (i + 1) & mask) {
+            if (productKeys[i] == product)
+                return productRanks[i];
+            if (productKeys[i] == 0)
+                throw new IllegalArgumentException("Not a legal poker hand.");
+        }
+    }
+
+    private static int hash(int product) {
+        return (product * 0x9E3779B9) >>> (32 - HASH_BITS);
+    }
+
+    /**
+     * Enumerates every multiset of at most five values, with counts[v] copies of
+     * value v+2, and stores its rank in the appropriate table.
+     */
+    private static void buildTables(int[] counts, int r, int size) {
+        if (r < 0) {
+            int bits = 0;
+            int product = 1;
+            for (int i = 0; i < 13; i++) {
+                if (counts[i] > 0)
+                    bits |= 1 << i;
+                for (int j = 0; j < counts[i]; j++)
+                    product *= PRIMES[i];
+            }
+            if (size == 5 && Integer.bitCount(bits) == 5) {
+                DISTINCT[bits] = computeRank(counts, size, false);
+                DISTINCT[FLUSH_BIT | bits] = computeRank(counts, size, true);
+            } else {
+                int mask = productKeys.length - 1;
+                int i = hash(product);
+                while (productKeys[i] != 0)
+                    i = (i + 1) & mask;
+                productKeys[i] = product;
+                productRanks[i] = computeRank(counts, size, false);
+            }
+            return;
+        }
+        for (int n = 0; size + n <= 5; n++) {
+            counts[r] = n;
+            buildTables(counts, r - 1, size + n);
+        }
+        counts[r] = 0;
+    }
+
+    /**
+     * Computes the rank of a multiset of values the slow way, reading the cards
+     * in the same order that PokerRank has always used.
+     */
+    private static int computeRank(int[] counts, int size, boolean flush) {
+        int[] order = new int[size]; // Values of the cards, in the order they are read.
+        int n = 0;
+        int type;
+        int quad = 0, triple = 0, pair1 = 0, pair2 = 0;
+        for (int v = 14; v >= 2; v--) {
+            int ct = counts[v - 2];
+            if (ct >= 4)
+                quad = v;
+            else if (ct == 3)
+                triple = v;
+            else if (ct == 2) {
+                if (pair1 == 0)
+                    pair1 = v;
+                else
+                    pair2 = v;
+            }
+        }
+        if (size == 5 && quad == 0 && triple == 0 && pair1 == 0) {
+            n = appendDescending(order, n, counts, 14, 2, 0);
+            boolean straight = order[0] == order[4] + 4;
+            if (order[0] == PokerCard.ACE && order[1] == 5) {
+                straight = true; // A wheel; the Ace is read as the low card.
+                System.arraycopy(order, 1, order, 0, 4);
+                order[4] = PokerCard.ACE;
+            }
+            if (flush && straight)
+                type = order[0] == PokerCard.ACE ? PokerRank.ROYAL_FLUSH : PokerRank.STRAIGHT_FLUSH;
+            else if (flush)
+                type = PokerRank.FLUSH;
+            else if (straight)
+                type = PokerRank.STRAIGHT;
+            else
+                type = PokerRank.NOTHING;
+        } else if (quad != 0) {
+            type = PokerRank.FOUR_OF_A_KIND;
+            n = appendDescending(order, n, counts, quad, quad, 0);
+            n = appendDescending(order, n, counts, 14, 2, quad);
+        } else if (triple != 0) {
+            type = pair1 != 0 ? PokerRank.FULL_HOUSE : PokerRank.TRIPLE;
+            n = appendDescending(order, n, counts, triple, triple, 0);
+            // PokerRank rotates the higher kickers past the triple, so lower kickers come first.
+            n = appendDescending(order, n, counts, triple - 1, 2, 0);
+            n = appendDescending(order, n, counts, 14, triple + 1, 0);
+        } else if (pair2 != 0) {
+            type = PokerRank.TWO_PAIR;
+            n = appendDescending(order, n, counts, pair1, pair1, 0);
+            n = appendDescending(order, n, counts, pair2, pair2, 0);
+            n = appendDescending(order, n, counts, 14, 2, pair1, pair2);
+        } else if (pair1 != 0) {
+            type = PokerRank.PAIR;
+            n = appendDescending(order, n, counts, pair1, pair1, 0);
+            n = appendDescending(order, n, counts, 14, 2, pair1);
+        } else {
+            type = PokerRank.NOTHING;
+            n = appendDescending(order, n, counts, 14, 2, 0);
+        }
+        int rank = type << 20;
+        for (int i = 0; i < n; i++)
+            rank |= order[i] << 4 * (4 - i);
+        return rank;
+    }
+
+    private static int appendDescending(int[] order, int n, int[] counts, int from, int to, int... skip) {
+        for (int v = from; v >= to; v--) {
+            boolean skipped = false;
+            for (int s : skip)
+                skipped |= s == v;
+            if (!skipped) {
+                for (int j = 0; j < counts[v - 2]; j++)
+                    order[n++] = v;
+            }
+        }
+        return n;
+    }
+
+}
@@ -17,6 +17,7 @@ public class PokerGameState implements Serializable {
     public int opponentMoney; 
     public int pot; 
     public int amountToCheck; 
+    public int sequence; // Number of the state among those sent to this player, set by PokerHub.
 
     public PokerGameState(PokerCard[] hand, int status, int money, int opponentMoney, int pot) {
         this(hand, status, money, opponentMoney, pot, 0);
@@ -0,0 +1,314 @@
+package fivecarddraw;
+
+/**
+ * Maps five-card hands to a dense index in which hands that differ only by a
+ * permutation of the suits share the same index, and maps indices back to
+ * hands. There are 2,598,960 hands but only 134,459 indices, so tables and
+ * caches keyed by this index are about twenty times smaller than ones keyed
+ * by the hand. A hand together with a discard mask can be indexed the same
+ * way, for caches of draw results.
+ * <p>
+ * To find the index, the suits are put in a canonical order: suits holding
+ * more cards come first, and suits holding the same number of cards are
+ * ordered by the bit mask of the values they hold. The hand then falls into
+ * one of six suit patterns (5, 4-1, 3-2, 3-1-1, 2-2-1 and 2-1-1-1 cards per
+ * suit), and the value masks of its suits are ranked within that pattern.
+ */
+public final class PokerHandIndex {
+
+    /**
+     * The number of distinct indices.
+     */
+    public static final int SIZE = 134459;
+
+    /**
+     * The number of indices returned by indexWithDiscard(), which is 32 for
+     * each hand index. Not every one of them is used, since discarding either
+     * of two cards that are exchanged by a suit permutation gives one index.
+     */
+    public static final int DISCARD_SIZE = SIZE * 32;
+
+    private static final int[][] CHOOSE = new int[16][6]; // CHOOSE[n][k] is n choose k.
+
+    static {
+        for (int n = 0; n < 16; n++) {
+            CHOOSE[n][0] = 1;
+            for (int k = 1; k < 6; k++)
+                CHOOSE[n][k] = n == 0 ? 0 : CHOOSE[n - 1][k - 1] + CHOOSE[n - 1][k];
+        }
+    }
+
+    // First index of each suit pattern.
+    private static final int PATTERN_5 = 0;
+    private static final int PATTERN_4_1 = PATTERN_5 + 1287;
+    private static final int PATTERN_3_2 = PATTERN_4_1 + 715 * 13;
+    private static final int PATTERN_3_1_1 = PATTERN_3_2 + 286 * 78;
+    private static final int PATTERN_2_2_1 = PATTERN_3_1_1 + 286 * 91;
+    private static final int PATTERN_2_1_1_1 = PATTERN_2_2_1 + 3081 * 13;
+
+    private static final int[][] SUIT_PERMUTATIONS = new int[24][]; // All orderings of the four suits.
+
+    static {
+        int n = 0;
+        for (int a = 0; a < 4; a++)
+            for (int b = 0; b < 4; b++)
+                for (int c = 0; c < 4; c++)
+                    if (a != b && a != c && b != c)
+                        SUIT_PERMUTATIONS[n++] = new int[] { a, b, c, 6 - a - b - c };
+    }
+
+    private PokerHandIndex() {
+    }
+
+    /**
+     * Returns the index of a five-card hand.
+     */
+    public static int index(PokerCard[] hand) {
+        return index(hand, null);
+    }
+
+    /**
+     * Returns the index of a five-card hand together with a set of cards to be
+     * discarded from it, where bit i of discardMask is set if hand[i] is to be
+     * discarded. The result is in the range 0 to DISCARD_SIZE-1, and is the same
+     * for any hand and mask that can be turned into each other by permuting the
+     * suits. It is index(hand) times 32 plus the mask in canonical order.
+     */
+    public static int indexWithDiscard(PokerCard[] hand, int discardMask) {
+        if (discardMask < 0 || discardMask > 31)
+            throw new IllegalArgumentException("Illegal discard mask.");
+        int[] order = new int[5];
+        int[] masks = new int[4];
+        int index = index(hand, order, masks);
+        int canonicalMask = 0;
+        for (int j = 0; j < 5; j++) {
+            if ((discardMask & 1 << order[j]) != 0)
+                canonicalMask |= 1 << j;
+        }
+        // Suits that hold the same values can still be exchanged, which moves
+        // the discards between their blocks of cards in canonical order; use
+        // the smallest mask that can be reached that way.
+        int[] start = new int[5];
+        for (int c = 0; c < 4; c++)
+            start[c + 1] = start[c] + Integer.bitCount(masks[c]);
+        int best = canonicalMask;
+        for (int[] p : SUIT_PERMUTATIONS) {
+            if (masks[p[0]] != masks[0] || masks[p[1]] != masks[1] || masks[p[2]] != masks[2])
+                continue;
+            int permuted = 0;
+            for (int c = 0; c < 4; c++) {
+                int block = (canonicalMask >>> start[c]) & ((1 << (start[c + 1] - start[c])) - 1);
+                permuted |= block << start[p[c]];
+            }
+            best = Math.min(best, permuted);
+        }
+        return index * 32 + best;
+    }
+
+    /**
+     * Returns the hand with the given index in which the suits are used in the
+     * order SPADES, HEARTS, DIAMONDS, CLUBS. Its cards are listed in canonical
+     * order, so index(unindex(i), order) is i and leaves order unchanged.
+     */
+    public static PokerCard[] unindex(int index) {
+        if (index < 0 || index >= SIZE)
+            throw new IllegalArgumentException("Illegal hand index.");
+        int m0, m1 = 0, m2 = 0, m3 = 0;
+        if (index < PATTERN_4_1) {
+            m0 = subsetUnrank(index - PATTERN_5, 5);
+        } else if (index < PATTERN_3_2) {
+            int r = index - PATTERN_4_1;
+            m0 = subsetUnrank(r / 13, 4);
+            m1 = 1 << (r % 13);
+        } else if (index < PATTERN_3_1_1) {
+            int r = index - PATTERN_3_2;
+            m0 = subsetUnrank(r / 78, 3);
+            m1 = subsetUnrank(r % 78, 2);
+        } else if (index < PATTERN_2_2_1) {
+            int r = index - PATTERN_3_1_1;
+            m0 = subsetUnrank(r / 91, 3);
+            int a = largestAtMost(r % 91, 2, 1);
+            m1 = 1 << a;
+            m2 = 1 << (r % 91 - CHOOSE[a + 1][2]);
+        } else if (index < PATTERN_2_1_1_1) {
+            int r = index - PATTERN_2_2_1;
+            int q = r / 13;
+            int x = 0; // The ranks x >= y of the two pairs were combined as x*(x+1)/2 + y.
+            while ((x + 1) * (x + 2) / 2 <= q)
+                x++;
+            m0 = subsetUnrank(x, 2);
+            m1 = subsetUnrank(q - x * (x + 1) / 2, 2);
+            m2 = 1 << (r % 13);
+        } else {
+            int r = index - PATTERN_2_1_1_1;
+            m0 = subsetUnrank(r / 455, 2);
+            r %= 455;
+            int a = largestAtMost(r, 3, 2);
+            r -= CHOOSE[a + 2][3];
+            int b = largestAtMost(r, 2, 1);
+            r -= CHOOSE[b + 1][2];
+            m1 = 1 << a;
+            m2 = 1 << b;
+            m3 = 1 << r;
+        }
+        int[] masks = { m0, m1, m2, m3 };
+        PokerCard[] hand = new PokerCard[5];
+        int n = 0;
+        for (int suit = 0; suit < 4; suit++) {
+            for (int v = 14; v >= 2; v--) {
+                if ((masks[suit] & 1 << (v - 2)) != 0)
+                    hand[n++] = PokerCard.valueOf(v, suit);
+            }
+        }
+        return hand;
+    }
+
+    /**
+     * Returns the hand for an index from indexWithDiscard(), in canonical order.
+     * The discard mask for the same index, in terms of this hand, is given by
+     * discardMaskOf().
+     */
+    public static PokerCard[] unindexWithDiscard(int index) {
+        if (index < 0 || index >= DISCARD_SIZE)
+            throw new IllegalArgumentException("Illegal hand and discard index.");
+        return unindex(index >>> 5);
+    }
+
+    /**
+     * Returns the discard mask, in terms of the hand from unindexWithDiscard(),
+     * for an index from indexWithDiscard().
+     */
+    public static int discardMaskOf(int indexWithDiscard) {
+        return indexWithDiscard & 31;
+    }
+
+    /**
+     * Returns the index of a five-card hand. If order is not null, it is filled
+     * with the positions in hand of the cards in canonical order: by canonical
+     * suit, then by decreasing value. Two hands with the same index list the
+     * same values in the same canonical suits in that order, so a position in
+     * canonical order means the same card for both.
+     */
+    public static int index(PokerCard[] hand, int[] order) {
+        return index(hand, order, new int[4]);
+    }
+
+    /**
+     * Finds the index as above and stores the value masks of the suits, in
+     * canonical order, in canonicalMasks.
+     */
+    private static int index(PokerCard[] hand, int[] order, int[] canonicalMasks) {
+        if (hand == null || hand.length != 5)
+            throw new IllegalArgumentException("The hand must contain five cards.");
+        int[] masks = new int[4]; // Value bits held in each suit.
+        for (PokerCard c : hand) {
+            if (c.getSuit() == PokerCard.JOKER)
+                throw new IllegalArgumentException("PokerHandIndex does not support jokers.");
+            int bit = 1 << (c.getValue() - 2);
+            if ((masks[c.getSuit()] & bit) != 0)
+                throw new IllegalArgumentException("The same card appears more than once.");
+            masks[c.getSuit()] |= bit;
+        }
+        int[] suits = { 0, 1, 2, 3 };
+        for (int i = 1; i < 4; i++) { // Insertion sort, largest key first.
+            int s = suits[i];
+            int j = i;
+            while (j > 0 && sortKey(masks[suits[j - 1]]) < sortKey(masks[s])) {
+                suits[j] = suits[j - 1];
+                j--;
+            }
+            suits[j] = s;
+        }
+        if (order != null) {
+            int n = 0;
+            for (int c = 0; c < 4; c++) {
+                for (int v = 14; v >= 2; v--) {
+                    if ((masks[suits[c]] & 1 << (v - 2)) == 0)
+                        continue;
+                    for (int i = 0; i < 5; i++) {
+                        if (hand[i].getSuit() == suits[c] && hand[i].getValue() == v)
+                            order[n++] = i;
+                    }
+                }
+            }
+        }
+        for (int c = 0; c < 4; c++)
+            canonicalMasks[c] = masks[suits[c]];
+        return index(canonicalMasks[0], canonicalMasks[1], canonicalMasks[2], canonicalMasks[3]);
+    }
+
+    private static int sortKey(int mask) {
+        return Integer.bitCount(mask) << 13 | mask;
+    }
+
+    /**
+     * Returns the index for the value masks of the four suits in canonical order.
+     */
+    private static int index(int m0, int m1, int m2, int m3) {
+        switch (Integer.bitCount(m0)) {
+            case 5:
+                return PATTERN_5 + subsetRank(m0);
+            case 4:
+                return PATTERN_4_1 + subsetRank(m0) * 13 + bit(m1);
+            case 3:
+                if (Integer.bitCount(m1) == 2)
+                    return PATTERN_3_2 + subsetRank(m0) * 78 + subsetRank(m1);
+                return PATTERN_3_1_1 + subsetRank(m0) * 91 + multisetRank(bit(m1), bit(m2));
+            default:
+                if (Integer.bitCount(m1) == 2) {
+                    int x = subsetRank(m0), y = subsetRank(m1);
+                    return PATTERN_2_2_1 + (x * (x + 1) / 2 + y) * 13 + bit(m2);
+                }
+                int a = bit(m1), b = bit(m2), c = bit(m3);
+                return PATTERN_2_1_1_1 + subsetRank(m0) * 455 + CHOOSE[a + 2][3] + CHOOSE[b + 1][2] + c;
+        }
+    }
+
+    /**
+     * Returns the rank of a k-subset of 0..12, given as a bit mask, among all
+     * k-subsets in colexicographic order, which is also numeric order.
+     */
+    private static int subsetRank(int mask) {
+        int rank = 0;
+        for (int k = 1; mask != 0; k++, mask &= mask - 1)
+            rank += CHOOSE[Integer.numberOfTrailingZeros(mask)][k];
+        return rank;
+    }
+
+    /**
+     * Returns the k-subset of 0..12, as a bit mask, with the given rank.
+     */
+    private static int subsetUnrank(int rank, int k) {
+        int mask = 0;
+        for (; k > 0; k--) {
+            int n = k - 1;
+            while (n < 12 && CHOOSE[n + 1][k] <= rank)
+                n++;
+            mask |= 1 << n;
+            rank -= CHOOSE[n][k];
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the largest a such that CHOOSE[a + offset][k] is at most r.
+     */
+    private static int largestAtMost(int r, int k, int offset) {
+        int a = 0;
+        while (a < 12 && CHOOSE[a + 1 + offset][k] <= r)
+            a++;
+        return a;
+    }
+
+    /**
+     * Returns the rank of the multiset {a, b}, where a >= b.
+     */
+    private static int multisetRank(int a, int b) {
+        return a * (a + 1) / 2 + b;
+    }
+
+    private static int bit(int mask) {
+        return Integer.numberOfTrailingZeros(mask);
+    }
+
+}
@@ -22,19 +22,65 @@ public class PokerHub extends Hub {
     private PokerCard[][] hand = new PokerCard[2][5]; 
     private int[] money = new int[2]; 
     private int pot;
+    private static final int SNAPSHOT_INTERVAL = 16; // At most this many states between full ones.
+    private final PokerGameState[] lastState = new PokerGameState[2]; // The state each player holds.
+    private final int[] statesSinceSnapshot = new int[2];
+    private final int[] sequence = new int[2]; // The number of the last state sent to each player.
     public PokerHub(int port) throws IOException {
-        super(port);
+        super(port, connectionOptions());
+        deck.setLazyShuffle(true); // A hand deals at most 20 cards, so only shuffle those.
+        deck.setEntropyPool(PokerEntropyPool.getShared());
+    }
+
+    /**
+     * Creates a hub whose deals are determined by a table seed, so that the
+     * cards of any hand can be dealt again from the seed and the hand number,
+     * which are logged with each deal. Only the deals are reproducible: the
+     * players' actions are not recorded, and there is no way to replay a
+     * session. Main starts a hub like this when given --seed=N.
+     */
+    public PokerHub(int port, long seed) throws IOException {
+        super(port, connectionOptions());
+        deck.setLazyShuffle(true);
+        deck.setSeed(seed);
+    }
+
+    /**
+     * Returns the options that the hub and the clients of the game connect
+     * with, which send messages with PokerMessageCodec. A player that stops
+     * reading gets at most 256 waiting messages, with older states replaced
+     * by newer full ones.
+     */
+    static ConnectionOptions connectionOptions() {
+        ConnectionOptions options = new ConnectionOptions();
+        options.setCodec(new PokerMessageCodec());
+        options.setOutgoingQueueLimit(256);
+        options.setSlowClientPolicy(ConnectionOptions.SlowClientPolicy.COALESCE);
+        return options;
+    }
+
+    /**
+     * A full state makes any state or delta still waiting for the same player
+     * useless. If an older state is dropped instead, the next delta does not
+     * follow the state the player holds, and the player asks for a full state
+     * with PokerStateDelta.RESYNC.
+     */
+    protected boolean supersedes(Object newer, Object older) {
+        return newer instanceof PokerGameState
+                && (older instanceof PokerGameState || older instanceof PokerStateDelta);
     }
 
     protected void playerConnected(int playerID) {
+        if (playerID <= 2)
+            lastState[playerID - 1] = null; // The next state for this player will be a full one.
         if (playerID == 2) {
             shutdownServerSocket();
             dealer = 1;
             currentPlayer = 1;
             money[0] = 1000;
             money[1] = 1000;
-            sendToOne(1, new PokerGameState(null, PokerGameState.DEAL, 1000, 1000, 0));
-            sendToOne(2, new PokerGameState(null, PokerGameState.WAIT_FOR_DEAL, 1000, 1000, 0));
+            sendState(1, new PokerGameState(null, PokerGameState.DEAL, 1000, 1000, 0));
+            sendState(2, new PokerGameState(null, PokerGameState.WAIT_FOR_DEAL, 1000, 1000, 0));
             sendToAll("Ready to start the first game!");
         }
     }
@@ -44,6 +90,13 @@ public class PokerHub extends Hub {
     }
     
     protected void messageReceived(int playerID, Object message) {
+        if (PokerStateDelta.RESYNC.equals(message)) {
+            if (playerID <= 2 && lastState[playerID - 1] != null) {
+                sendToOne(playerID, lastState[playerID - 1]); // Still numbered as when it was first sent.
+                statesSinceSnapshot[playerID - 1] = 1;
+            }
+            return;
+        }
         if (playerID != currentPlayer) {
             System.out.println("Error: message received from the wrong player.");
             return;
@@ -54,6 +107,8 @@ public class PokerHub extends Hub {
                 return;
             }
             deck.shuffle();
+            if (deck.isSeeded())
+                System.out.println("Dealing hand " + deck.getHandNumber() + " of table seed " + deck.getSeed());
             for (int i = 0; i < 5; i++) {
                 hand[0][i] = deck.dealCard();
                 hand[1][i] = deck.dealCard();
@@ -145,24 +200,21 @@ public class PokerHub extends Hub {
         }
     }
     private void checkCardsAtEndOfGame() {
-        PokerRank[] rank = new PokerRank[2];
-        for (int i = 0; i < 2; i++) {
-            rank[i] = new PokerRank();
-            for (PokerCard c : hand[i])
-                rank[i].add(c);
-        }
+        int[] rank = new int[2];
+        for (int i = 0; i < 2; i++)
+            rank[i] = PokerEvaluator.rank(hand[i]);
         int winner; 
-        if (rank[0].getRank() > rank[1].getRank())
+        if (rank[0] > rank[1])
             winner = 0; 
-        else if (rank[0].getRank() < rank[1].getRank())
+        else if (rank[0] < rank[1])
             winner = 1;
         else
             winner = -1; 
         sendToOne(1, hand[1].clone()); 
         sendToOne(2, hand[0].clone()); 
         if (winner != -1) { 
-            gameOver(winner + 1, rank[winner] + " beats " + rank[1 - winner],
-                    rank[winner] + " beats " + rank[1 - winner]);
+            String result = PokerRank.describe(rank[winner]) + " beats " + PokerRank.describe(rank[1 - winner]);
+            gameOver(winner + 1, result, result);
         } else { 
             sendToAll("The result is a tie.  The pot stays on the table.");
             previousGameTied = true;
@@ -194,14 +246,35 @@ public class PokerHub extends Hub {
             player1State = opponentState;
         }
         if (status == WAITING_FOR_BET_OR_CHECK) { 
-            sendToOne(1,
+            sendState(1,
                     new PokerGameState(hand[0].clone(), player1State, money[0], money[1], pot, amountNeededToCheck));
-            sendToOne(2,
+            sendState(2,
                     new PokerGameState(hand[1].clone(), player2State, money[1], money[0], pot, amountNeededToCheck));
         } else { 
-            sendToOne(1, new PokerGameState(hand[0].clone(), player1State, money[0], money[1], pot));
-            sendToOne(2, new PokerGameState(hand[1].clone(), player2State, money[1], money[0], pot));
+            sendState(1, new PokerGameState(hand[0].clone(), player1State, money[0], money[1], pot));
+            sendState(2, new PokerGameState(hand[1].clone(), player2State, money[1], money[0], pot));
+        }
+    }
+
+    /**
+     * Numbers a state and sends it to one player, as a PokerStateDelta from
+     * the last state sent to that player, or in full after a connect and
+     * every SNAPSHOT_INTERVAL states. The player applies the delta only if it
+     * holds the state it was built from, which it may not if the outgoing
+     * queue dropped a full state; otherwise it asks for a full state with
+     * PokerStateDelta.RESYNC.
+     */
+    private void sendState(int playerID, PokerGameState state) {
+        int i = playerID - 1;
+        state.sequence = ++sequence[i];
+        if (lastState[i] == null || statesSinceSnapshot[i] >= SNAPSHOT_INTERVAL) {
+            sendToOne(playerID, state);
+            statesSinceSnapshot[i] = 1;
+        } else {
+            sendToOne(playerID, new PokerStateDelta(lastState[i].sequence, lastState[i], state));
+            statesSinceSnapshot[i]++;
         }
+        lastState[i] = state;
     }
 
 }
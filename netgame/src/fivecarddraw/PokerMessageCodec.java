@@ -0,0 +1,232 @@
+package fivecarddraw;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+
+/**
+ * A MessageCodec with a compact binary format for the messages of the poker
+ * game: PokerGameState, PokerStateDelta, arrays of PokerCard, the Hub's
+ * StatusMessage, ForwardedMessage and DisconnectMessage, and the commands
+ * that PokerWindow sends, which are Strings, Integers and int arrays. Each
+ * value starts with a one-byte tag, cards are written as their one-byte codes,
+ * and nothing is written by reflection. A PokerGameState takes about 30 bytes
+ * instead of the several hundred that Java serialization uses, and a
+ * PokerStateDelta holds only the fields that changed.
+ * <p>
+ * Any other message, including subclasses of the classes above, is written
+ * with JavaSerializationCodec after a tag and a length.
+ */
+public class PokerMessageCodec implements MessageCodec {
+
+    private static final int TAG_SERIALIZED = 0;
+    private static final int TAG_NULL = 1;
+    private static final int TAG_STRING = 2;
+    private static final int TAG_INTEGER = 3;
+    private static final int TAG_INT_ARRAY = 4;
+    private static final int TAG_CARDS = 5;
+    private static final int TAG_GAME_STATE = 6;
+    private static final int TAG_STATUS = 7;
+    private static final int TAG_FORWARDED = 8;
+    private static final int TAG_DISCONNECT = 9;
+    private static final int TAG_STATE_DELTA = 10;
+
+    private static final int NO_HAND = 255; // Written as the card count of a null hand.
+
+    private final JavaSerializationCodec fallback = new JavaSerializationCodec();
+
+    public void encode(Object message, DataOutputStream out) throws IOException {
+        Class<?> type = message == null ? null : message.getClass();
+        if (message == null)
+            out.writeByte(TAG_NULL);
+        else if (type == String.class && ((String) message).length() <= 0xFFFF / 3) {
+            out.writeByte(TAG_STRING); // Short enough that writeUTF() cannot fail.
+            out.writeUTF((String) message);
+        }
+        else if (type == Integer.class) {
+            out.writeByte(TAG_INTEGER);
+            out.writeInt((Integer) message);
+        }
+        else if (type == int[].class) {
+            int[] values = (int[]) message;
+            out.writeByte(TAG_INT_ARRAY);
+            out.writeInt(values.length);
+            for (int v : values)
+                out.writeInt(v);
+        }
+        else if (type == PokerCard[].class && hasCodes((PokerCard[]) message)) {
+            out.writeByte(TAG_CARDS);
+            writeCards((PokerCard[]) message, out);
+        }
+        else if (type == PokerGameState.class && hasCodes(((PokerGameState) message).hand)
+                && (((PokerGameState) message).status & ~0xFF) == 0) {
+            PokerGameState state = (PokerGameState) message;
+            out.writeByte(TAG_GAME_STATE);
+            out.writeByte(state.status);
+            writeCards(state.hand, out);
+            out.writeInt(state.money);
+            out.writeInt(state.opponentMoney);
+            out.writeInt(state.pot);
+            out.writeInt(state.amountToCheck);
+            out.writeInt(state.sequence);
+        }
+        else if (type == PokerStateDelta.class && hasCodes(((PokerStateDelta) message).hand)
+                && (((PokerStateDelta) message).status & ~0xFF) == 0
+                && (((PokerStateDelta) message).changed & ~0xFF) == 0) {
+            PokerStateDelta delta = (PokerStateDelta) message;
+            out.writeByte(TAG_STATE_DELTA);
+            out.writeInt(delta.base);
+            out.writeByte(delta.changed); // Only the fields that changed follow.
+            if ((delta.changed & PokerStateDelta.STATUS) != 0)
+                out.writeByte(delta.status);
+            if ((delta.changed & PokerStateDelta.HAND) != 0)
+                writeCards(delta.hand, out);
+            if ((delta.changed & PokerStateDelta.MONEY) != 0)
+                out.writeInt(delta.money);
+            if ((delta.changed & PokerStateDelta.OPPONENT_MONEY) != 0)
+                out.writeInt(delta.opponentMoney);
+            if ((delta.changed & PokerStateDelta.POT) != 0)
+                out.writeInt(delta.pot);
+            if ((delta.changed & PokerStateDelta.AMOUNT_TO_CHECK) != 0)
+                out.writeInt(delta.amountToCheck);
+        }
+        else if (type == StatusMessage.class) {
+            StatusMessage status = (StatusMessage) message;
+            out.writeByte(TAG_STATUS);
+            out.writeInt(status.playerID);
+            out.writeBoolean(status.connecting);
+            out.writeInt(status.players.length);
+            for (int p : status.players)
+                out.writeInt(p);
+        }
+        else if (type == ForwardedMessage.class) {
+            ForwardedMessage forwarded = (ForwardedMessage) message;
+            out.writeByte(TAG_FORWARDED);
+            out.writeInt(forwarded.senderID);
+            encode(forwarded.message, out);
+        }
+        else if (type == DisconnectMessage.class && ((DisconnectMessage) message).message != null) {
+            out.writeByte(TAG_DISCONNECT);
+            out.writeUTF(((DisconnectMessage) message).message);
+        }
+        else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            fallback.encode(message, new DataOutputStream(bytes));
+            out.writeByte(TAG_SERIALIZED);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
+
+    public Object decode(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case TAG_SERIALIZED: {
+                byte[] bytes = new byte[readLength(in)];
+                in.readFully(bytes);
+                return fallback.decode(new DataInputStream(new ByteArrayInputStream(bytes)));
+            }
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return in.readUTF();
+            case TAG_INTEGER:
+                return in.readInt();
+            case TAG_INT_ARRAY: {
+                int[] values = new int[readLength(in)];
+                for (int i = 0; i < values.length; i++)
+                    values[i] = in.readInt();
+                return values;
+            }
+            case TAG_CARDS:
+                return readCards(in);
+            case TAG_GAME_STATE: {
+                int status = in.readUnsignedByte();
+                PokerCard[] hand = readCards(in);
+                int money = in.readInt();
+                int opponentMoney = in.readInt();
+                int pot = in.readInt();
+                int amountToCheck = in.readInt();
+                PokerGameState state = new PokerGameState(hand, status, money, opponentMoney, pot, amountToCheck);
+                state.sequence = in.readInt();
+                return state;
+            }
+            case TAG_STATE_DELTA: {
+                int base = in.readInt();
+                int changed = in.readUnsignedByte();
+                int status = (changed & PokerStateDelta.STATUS) != 0 ? in.readUnsignedByte() : 0;
+                PokerCard[] hand = (changed & PokerStateDelta.HAND) != 0 ? readCards(in) : null;
+                int money = (changed & PokerStateDelta.MONEY) != 0 ? in.readInt() : 0;
+                int opponentMoney = (changed & PokerStateDelta.OPPONENT_MONEY) != 0 ? in.readInt() : 0;
+                int pot = (changed & PokerStateDelta.POT) != 0 ? in.readInt() : 0;
+                int amountToCheck = (changed & PokerStateDelta.AMOUNT_TO_CHECK) != 0 ? in.readInt() : 0;
+                if (base < 0)
+                    throw new InvalidObjectException("Illegal delta base " + base);
+                return new PokerStateDelta(base, changed, status, hand, money, opponentMoney, pot, amountToCheck);
+            }
+            case TAG_STATUS: {
+                int playerID = in.readInt();
+                boolean connecting = in.readBoolean();
+                int[] players = new int[readLength(in)];
+                for (int i = 0; i < players.length; i++)
+                    players[i] = in.readInt();
+                return new StatusMessage(playerID, connecting, players);
+            }
+            case TAG_FORWARDED: {
+                int senderID = in.readInt();
+                return new ForwardedMessage(senderID, decode(in));
+            }
+            case TAG_DISCONNECT:
+                return new DisconnectMessage(in.readUTF());
+            default:
+                throw new InvalidObjectException("Unknown message tag " + tag);
+        }
+    }
+
+    private static boolean hasCodes(PokerCard[] cards) {
+        if (cards == null)
+            return true;
+        if (cards.length >= NO_HAND)
+            return false;
+        for (PokerCard c : cards) {
+            if (c == null || (c.getSuit() == PokerCard.JOKER && c.getValue() != 1 && c.getValue() != 2))
+                return false;
+        }
+        return true;
+    }
+
+    private static void writeCards(PokerCard[] cards, DataOutputStream out) throws IOException {
+        if (cards == null) {
+            out.writeByte(NO_HAND);
+            return;
+        }
+        out.writeByte(cards.length);
+        for (PokerCard c : cards)
+            out.writeByte(c.getCode());
+    }
+
+    private static PokerCard[] readCards(DataInputStream in) throws IOException {
+        int count = in.readUnsignedByte();
+        if (count == NO_HAND)
+            return null;
+        PokerCard[] cards = new PokerCard[count];
+        for (int i = 0; i < count; i++) {
+            int code = in.readUnsignedByte();
+            if (code >= PokerCard.CODE_COUNT)
+                throw new InvalidObjectException("Illegal card code " + code);
+            cards[i] = PokerCard.fromCode(code);
+        }
+        return cards;
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available())
+            throw new InvalidObjectException("Illegal length " + length);
+        return length;
+    }
+
+}
@@ -4,7 +4,9 @@ import java.util.ArrayList;
 
 /**
  * This is a utility class that can be used to assign ranks
- * to poker hands containing up to five cards. 
+ * to poker hands containing up to five cards. The rank itself
+ * is computed by PokerEvaluator; this class keeps the cards
+ * and describes the hand.
  */
 
 public class PokerRank {
@@ -58,10 +60,46 @@ public class PokerRank {
     public static final int STRAIGHT_FLUSH = 8;
     public static final int ROYAL_FLUSH = 9;
 
+    private static final String[] VALUE_NAMES = { null, null, "Two", "Three", "Four", "Five", "Six",
+            "Seven", "Eight", "Nine", "Ten", "Jack", "Queen", "King", "Ace" }; // Indexed by card value.
+    private static final String[] PLURAL_VALUE_NAMES = new String[15];
+    private static final String[] HAND_TYPE_NAMES = { "Nothing", "Pair", "Two pairs", "Triple", "Straight",
+            "Flush", "Full House", "Four of a kind", "Straight Flush", "Royal Flush" }; // Indexed by hand type.
+
+    /**
+     * Short descriptions, indexed by hand type, the value of the first card and,
+     * for full houses and two pairs, the value of the second group. Built once
+     * so that describing a hand never has to concatenate Strings.
+     */
+    private static final String[] DESCRIPTIONS = new String[10 << 8];
+
+    static {
+        for (int v = 2; v <= 14; v++)
+            PLURAL_VALUE_NAMES[v] = v == 6 ? "Sixes" : VALUE_NAMES[v] + "s";
+        for (int v = 2; v <= 14; v++) {
+            DESCRIPTIONS[NOTHING << 8 | v << 4] = ("High Card (" + VALUE_NAMES[v] + ")").intern();
+            DESCRIPTIONS[PAIR << 8 | v << 4] = ("Pair of " + PLURAL_VALUE_NAMES[v]).intern();
+            DESCRIPTIONS[TRIPLE << 8 | v << 4] = ("Three " + PLURAL_VALUE_NAMES[v]).intern();
+            DESCRIPTIONS[STRAIGHT << 8 | v << 4] = (VALUE_NAMES[v] + "-high Straight").intern();
+            DESCRIPTIONS[FLUSH << 8 | v << 4] = "Flush";
+            DESCRIPTIONS[FOUR_OF_A_KIND << 8 | v << 4] = ("Four " + PLURAL_VALUE_NAMES[v]).intern();
+            DESCRIPTIONS[STRAIGHT_FLUSH << 8 | v << 4] = (VALUE_NAMES[v] + "-high Straight Flush").intern();
+            DESCRIPTIONS[ROYAL_FLUSH << 8 | v << 4] = "Royal Flush";
+            for (int w = 2; w <= 14; w++) {
+                DESCRIPTIONS[TWO_PAIR << 8 | v << 4 | w] = ("Two Pairs, " + PLURAL_VALUE_NAMES[v] + " and "
+                        + PLURAL_VALUE_NAMES[w]).intern();
+                DESCRIPTIONS[FULL_HOUSE << 8 | v << 4 | w] = ("Full House, " + PLURAL_VALUE_NAMES[v] + " and "
+                        + PLURAL_VALUE_NAMES[w]).intern();
+            }
+        }
+    }
+
     private ArrayList<PokerCard> cards = new ArrayList<PokerCard>(); // The cards in this hand.
+    private int[] packedCards = new int[5]; // The same cards, packed for PokerEvaluator.
+    private boolean cardsInRankOrder; // Set to true once the cards have been sorted by getCards().
     private int rank = -1;
-    private String description;
-    private String longDescription;
+    private String description; // Built on demand by getDescription().
+    private String longDescription; // Built on demand by getLongDescription().
 
     public PokerRank(PokerCard... card) {
         if (card != null) {
@@ -84,62 +122,42 @@ public class PokerRank {
             throw new IllegalArgumentException("Class PokerRank does not support jokers.");
         if (cards.size() == 5)
             throw new IllegalArgumentException("PokerRank does not support hands with more than five cards.");
+        packedCards[cards.size()] = PokerEvaluator.pack(card);
         cards.add(card);
         rank = -1;
+        cardsInRankOrder = false;
+        description = longDescription = null;
     }
 
     public int getRank() {
         if (rank == -1)
-            computeRank();
+            rank = PokerEvaluator.rank(packedCards, cards.size());
         return rank;
     }
 
     public String getDescription() {
-        if (rank == -1)
-            computeRank();
+        if (description == null)
+            description = describe(getRank());
         return description;
     }
 
     public String getLongDescription() {
-        if (rank == -1)
-            computeRank();
+        if (longDescription == null)
+            longDescription = describeLong(getRank());
         return longDescription;
     }
 
     public int getHandType() {
-        if (rank == -1)
-            computeRank();
-        return rank >> 20;
+        return getRank() >> 20;
     }
 
     public String getHandTypeAsString() {
-        if (cards.size() == 0)
-            return "Empty Hand";
-        int type = getHandType();
-        if (type == PAIR)
-            return "Pair";
-        if (type == TWO_PAIR)
-            return "Two pairs";
-        if (type == TRIPLE)
-            return "Triple";
-        if (type == STRAIGHT)
-            return "Straight";
-        if (type == FLUSH)
-            return "Flush";
-        if (type == FULL_HOUSE)
-            return "Full House";
-        if (type == FOUR_OF_A_KIND)
-            return "Four of a kind";
-        if (type == STRAIGHT_FLUSH)
-            return "Straight Flush";
-        if (type == ROYAL_FLUSH)
-            return "Royal Flush";
-        return "Nothing";
+        return handTypeAsString(getRank());
     }
 
     public ArrayList<PokerCard> getCards() {
-        if (rank == -1)
-            computeRank();
+        if (!cardsInRankOrder)
+            sortCards();
         return new ArrayList<PokerCard>(cards);
     }
 
@@ -147,237 +165,101 @@ public class PokerRank {
         return getDescription();
     }
 
-    private String valueName(PokerCard c) {
-        switch (c.getValue()) {
-            case 2:
-                return "Two";
-            case 3:
-                return "Three";
-            case 4:
-                return "Four";
-            case 5:
-                return "Five";
-            case 6:
-                return "Six";
-            case 7:
-                return "Seven";
-            case 8:
-                return "Eight";
-            case 9:
-                return "Nine";
-            case 10:
-                return "Ten";
-            case 11:
-                return "Jack";
-            case 12:
-                return "Queen";
-            case 13:
-                return "King";
+    /**
+     * Returns the name of the hand type for a rank produced by getRank() or
+     * PokerEvaluator, such as "Full House".
+     */
+    public static String handTypeAsString(int rank) {
+        if (rank == 0)
+            return "Empty Hand";
+        return HAND_TYPE_NAMES[rank >> 20];
+    }
+
+    /**
+     * Returns the short description, such as "Pair of Sixes", for a rank
+     * produced by getRank() or PokerEvaluator. No new String is created.
+     */
+    public static String describe(int rank) {
+        if (rank == 0)
+            return "Empty Hand";
+        int type = rank >> 20;
+        int second = 0;
+        if (type == FULL_HOUSE)
+            second = valueAt(rank, 4);
+        else if (type == TWO_PAIR)
+            second = valueAt(rank, 2);
+        return DESCRIPTIONS[type << 8 | valueAt(rank, 0) << 4 | second];
+    }
+
+    /**
+     * Returns the long description, which also lists the kickers, for a rank
+     * produced by getRank() or PokerEvaluator.
+     */
+    public static String describeLong(int rank) {
+        if (rank == 0)
+            return "Empty Hand";
+        int size = 0; // Each card in the hand has a non-zero nibble in the rank.
+        while (size < 5 && valueAt(rank, size) != 0)
+            size++;
+        String description = describe(rank);
+        switch (rank >> 20) {
+            case NOTHING:
+                return "High Card (" + valueNames(rank, 0, size) + ")";
+            case PAIR:
+                return size > 2 ? description + " (plus " + valueNames(rank, 2, size) + ")" : description;
+            case TWO_PAIR:
+            case FOUR_OF_A_KIND:
+                return size == 5 ? description + " (plus " + VALUE_NAMES[valueAt(rank, 4)] + ")" : description;
+            case TRIPLE:
+                if (size == 4)
+                    return description + " (plus " + VALUE_NAMES[valueAt(rank, 3)] + ")";
+                else if (size == 5)
+                    return description + " (plus " + VALUE_NAMES[valueAt(rank, 3)]
+                            + " and " + VALUE_NAMES[valueAt(rank, 4)] + ")";
+                return description;
+            case FLUSH:
+                return "Flush (" + valueNames(rank, 0, size) + ")";
             default:
-                return "Ace";
+                return description;
         }
     }
 
-    private String pluralValueName(PokerCard c) {
-        if (c.getValue() == 6)
-            return "Sixes";
-        else
-            return valueName(c) + "s";
+    /**
+     * Returns the value of the i-th card, in rank order, from a rank.
+     */
+    private static int valueAt(int rank, int i) {
+        return (rank >> 4 * (4 - i)) & 0xF;
     }
 
-    private String cardValueNames() {
-        StringBuffer s = new StringBuffer(valueName(cards.get(0)));
-        for (int i = 1; i < cards.size(); i++) {
+    private static String valueNames(int rank, int from, int to) {
+        StringBuilder s = new StringBuilder(VALUE_NAMES[valueAt(rank, from)]);
+        for (int i = from + 1; i < to; i++) {
             s.append(',');
-            s.append(valueName(cards.get(i)));
+            s.append(VALUE_NAMES[valueAt(rank, i)]);
         }
         return s.toString();
     }
 
-    private void computeRank() {
-        if (cards.size() == 0) {
-            rank = 0;
-            description = longDescription = "Empty Hand";
-            return;
-        }
-
+    /**
+     * Puts the cards in the order given by the nibbles of the rank; cards of
+     * equal value are taken in decreasing order of suit.
+     */
+    private void sortCards() {
+        int rank = getRank();
         ArrayList<PokerCard> newCards = new ArrayList<PokerCard>();
-        while (cards.size() > 0) {
-            PokerCard maxCard = cards.get(0);
-            for (int i = 1; i < cards.size(); i++)
-                if (cards.get(i).getValue() > maxCard.getValue() ||
-                        cards.get(i).getValue() == maxCard.getValue() && cards.get(i).getSuit() > maxCard.getSuit())
-                    maxCard = cards.get(i);
-            cards.remove(maxCard);
-            newCards.add(maxCard);
-        }
-        cards = newCards;
-
-        try {
-            boolean isFlush = false;
-            if (cards.size() == 5) {
-                isFlush = cards.get(0).getSuit() == cards.get(1).getSuit()
-                        && cards.get(1).getSuit() == cards.get(2).getSuit()
-                        && cards.get(1).getSuit() == cards.get(3).getSuit()
-                        && cards.get(1).getSuit() == cards.get(4).getSuit();
-            }
-            boolean isStraight = false;
-            if (cards.size() == 5) {
-                if (cards.get(0).getValue() == PokerCard.ACE && cards.get(1).getValue() == 5
-                        && cards.get(2).getValue() == 4 && cards.get(3).getValue() == 3
-                        && cards.get(4).getValue() == 2) {
-                    isStraight = true;
-                    cards.add(cards.remove(0)); 
-                } else { 
-                    isStraight = cards.get(0).getValue() == cards.get(1).getValue() + 1
-                            && cards.get(1).getValue() == cards.get(2).getValue() + 1
-                            && cards.get(2).getValue() == cards.get(3).getValue() + 1
-                            && cards.get(3).getValue() == cards.get(4).getValue() + 1;
-                }
-            }
-            if (isFlush) {
-                if (isStraight) {
-                    if (cards.get(0).getValue() == PokerCard.ACE) {
-                        rank = ROYAL_FLUSH;
-                        description = longDescription = "Royal Flush";
-                    } else {
-                        rank = STRAIGHT_FLUSH;
-                        description = longDescription = valueName(cards.get(0)) + "-high Straight Flush";
-                    }
-                } else {
-                    rank = FLUSH;
-                    description = "Flush";
-                    longDescription = "Flush (" + cardValueNames() + ")";
-                }
-                return;
-            }
-            if (isStraight) {
-                rank = STRAIGHT;
-                description = longDescription = valueName(cards.get(0)) + "-high Straight";
-                return;
-            }
-
-            if (cards.size() >= 4) {
-                if (cards.get(0).getValue() == cards.get(1).getValue()
-                        && cards.get(1).getValue() == cards.get(2).getValue()
-                        && cards.get(2).getValue() == cards.get(3).getValue()) {
-                    rank = FOUR_OF_A_KIND;
-                    description = longDescription = "Four " + pluralValueName(cards.get(0));
-                    if (cards.size() == 5)
-                        longDescription = description + " (plus " + valueName(cards.get(4)) + ")";
-                    return;
-                }
-            }
-            if (cards.size() == 5
-                    && cards.get(1).getValue() == cards.get(2).getValue()
-                    && cards.get(2).getValue() == cards.get(3).getValue()
-                    && cards.get(3).getValue() == cards.get(4).getValue()) {
-                cards.add(cards.remove(0)); // Move first card -- not part of the Quad -- to the end.
-                rank = FOUR_OF_A_KIND;
-                description = "Four " + pluralValueName(cards.get(0));
-                longDescription = description + " (plus " + valueName(cards.get(4)) + ")";
-                return;
-            }
-
-            int tripleValue = 0; 
-            int tripleLocation = -1; 
-            for (int i = 0; i <= cards.size() - 3; i++) {
-                if (cards.get(i).getValue() == cards.get(i + 1).getValue()
-                        && cards.get(i + 1).getValue() == cards.get(i + 2).getValue()) {
-                    tripleLocation = i;
-                    tripleValue = cards.get(i).getValue();
-                    break;
-                }
-            }
-            
-            int pairValue1 = 0;
-            int pairLoc1 = -1;
-            int pairValue2 = 0;
-            int pairLoc2 = -1; 
-            
-            for (int i = 0; i <= cards.size() - 2; i++) {
-                if (cards.get(i).getValue() == cards.get(i + 1).getValue() && cards.get(i).getValue() != tripleValue) {
-                    pairValue1 = cards.get(i).getValue();
-                    pairLoc1 = i;
-                    for (int j = i + 2; j <= cards.size() - 2; j++) {
-                        if (cards.get(j).getValue() == cards.get(j + 1).getValue()
-                                && cards.get(j).getValue() != tripleValue) {
-                            pairValue2 = cards.get(j).getValue();
-                            pairLoc2 = j;
-                            break;
-                        }
-                    }
-                    break;
-                }
-            }
-
-            if (tripleValue == 0 && pairValue1 == 0) {
-                rank = NOTHING;
-                description = "High Card (" + valueName(cards.get(0)) + ")";
-                longDescription = "High Card (" + cardValueNames() + ")";
-                return;
-            }
-
-            if (tripleValue > 0) {
-                for (int i = 0; i < tripleLocation; i++) {
-                    cards.add(cards.remove(0));
-                }
-                if (pairValue1 > 0) {
-                    rank = FULL_HOUSE;
-                    description = longDescription = "Full House, " + pluralValueName(cards.get(0))
-                            + " and " + pluralValueName(cards.get(4));
-                    return;
-                } else {
-                    rank = TRIPLE;
-                    description = longDescription = "Three " + pluralValueName(cards.get(0));
-                    if (cards.size() == 4)
-                        longDescription = description + " (plus " + valueName(cards.get(3)) + ")";
-                    else if (cards.size() == 5)
-                        longDescription = description + " (plus " + valueName(cards.get(3))
-                                + " and " + valueName(cards.get(4)) + ")";
-                    return;
-                }
-            }
-
-            if (pairLoc1 > 0) {
-                PokerCard p2 = cards.remove(pairLoc1 + 1);
-                PokerCard p1 = cards.remove(pairLoc1);
-                cards.add(0, p2);
-                cards.add(0, p1);
-            }
-
-            if (pairValue2 == 0) { // There was only one pair.
-                rank = PAIR;
-                description = longDescription = "Pair of " + pluralValueName(cards.get(0));
-                if (cards.size() == 5)
-                    longDescription = description + " (plus " + valueName(cards.get(2)) + ","
-                            + valueName(cards.get(3)) + "," + valueName(cards.get(4)) + ")";
-                else if (cards.size() == 4)
-                    longDescription = description + " (plus " + valueName(cards.get(2)) + ","
-                            + valueName(cards.get(3)) + ")";
-                else if (cards.size() == 3)
-                    longDescription = description + " (plus " + valueName(cards.get(2)) + ")";
-                return;
-            }
-
-            if (pairLoc2 > 2) {
-                PokerCard p2 = cards.remove(pairLoc2 + 1);
-                PokerCard p1 = cards.remove(pairLoc2);
-                cards.add(2, p2);
-                cards.add(2, p1);
-            }
-
-            rank = TWO_PAIR;
-            description = longDescription = "Two Pairs, " + pluralValueName(cards.get(0)) + " and "
-                    + pluralValueName(cards.get(2));
-            if (cards.size() == 5)
-                longDescription = description + " (plus " + valueName(cards.get(4)) + ")";
-
-        } finally {
-            rank <<= 20;
-            for (int i = 0; i < cards.size(); i++) {
-                rank |= cards.get(i).getValue() << 4 * (4 - i);
+        boolean[] used = new boolean[cards.size()];
+        for (int i = 0; i < cards.size(); i++) {
+            int value = valueAt(rank, i);
+            int next = -1;
+            for (int j = 0; j < cards.size(); j++) {
+                PokerCard c = cards.get(j);
+                if (!used[j] && c.getValue() == value && (next == -1 || c.getSuit() > cards.get(next).getSuit()))
+                    next = j;
             }
+            used[next] = true;
+            newCards.add(cards.get(next));
         }
+        cards = newCards;
+        cardsInRankOrder = true;
     }
 }
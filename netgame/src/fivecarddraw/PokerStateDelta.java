@@ -0,0 +1,92 @@
+package fivecarddraw;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The fields of a PokerGameState that changed since the previous state sent
+ * to the same player. PokerHub sends one of these instead of a full
+ * PokerGameState for most updates, and the client rebuilds the full state
+ * with applyTo() before using it.
+ * <p>
+ * PokerHub numbers the states it sends to each player, full or not, in
+ * PokerGameState.sequence. A delta applies only to the state numbered base,
+ * and gives the state numbered base + 1. A client that holds some other
+ * state, or none, sends RESYNC, and the hub answers with a full
+ * PokerGameState. Since numbers are never reused, a delta built on a full
+ * state that was dropped before it reached the client does not match the
+ * state the client holds.
+ */
+public class PokerStateDelta implements Serializable {
+
+    /**
+     * The message that a client sends to ask for a full state.
+     */
+    public static final String RESYNC = "resync";
+
+    // Bits of changed.
+    public final static int STATUS = 1;
+    public final static int HAND = 2;
+    public final static int MONEY = 4;
+    public final static int OPPONENT_MONEY = 8;
+    public final static int POT = 16;
+    public final static int AMOUNT_TO_CHECK = 32;
+
+    public final int base; // The sequence number of the state this delta follows.
+    public final int changed; // The fields below that are set; the others are 0 or null.
+    public final int status;
+    public final PokerCard[] hand;
+    public final int money;
+    public final int opponentMoney;
+    public final int pot;
+    public final int amountToCheck;
+
+    /**
+     * Creates the delta that turns one state into another.
+     */
+    public PokerStateDelta(int base, PokerGameState from, PokerGameState to) {
+        this(base, (from.status != to.status ? STATUS : 0)
+                | (!Arrays.equals(from.hand, to.hand) ? HAND : 0)
+                | (from.money != to.money ? MONEY : 0)
+                | (from.opponentMoney != to.opponentMoney ? OPPONENT_MONEY : 0)
+                | (from.pot != to.pot ? POT : 0)
+                | (from.amountToCheck != to.amountToCheck ? AMOUNT_TO_CHECK : 0),
+                to.status, to.hand, to.money, to.opponentMoney, to.pot, to.amountToCheck);
+    }
+
+    /**
+     * Creates a delta from its fields. Values of fields that are not in
+     * changed are dropped.
+     */
+    public PokerStateDelta(int base, int changed, int status, PokerCard[] hand, int money,
+            int opponentMoney, int pot, int amountToCheck) {
+        if (base < 0)
+            throw new IllegalArgumentException("The base of a delta can't be negative.");
+        this.base = base;
+        this.changed = changed;
+        this.status = (changed & STATUS) != 0 ? status : 0;
+        this.hand = (changed & HAND) != 0 ? hand : null;
+        this.money = (changed & MONEY) != 0 ? money : 0;
+        this.opponentMoney = (changed & OPPONENT_MONEY) != 0 ? opponentMoney : 0;
+        this.pot = (changed & POT) != 0 ? pot : 0;
+        this.amountToCheck = (changed & AMOUNT_TO_CHECK) != 0 ? amountToCheck : 0;
+    }
+
+    /**
+     * Returns a new state with the changed fields of this delta, the other
+     * fields from state, which is not modified, and the sequence number after
+     * base.
+     */
+    public PokerGameState applyTo(PokerGameState state) {
+        PokerGameState result = new PokerGameState(
+                (changed & HAND) != 0 ? hand : state.hand,
+                (changed & STATUS) != 0 ? status : state.status,
+                (changed & MONEY) != 0 ? money : state.money,
+                (changed & OPPONENT_MONEY) != 0 ? opponentMoney : state.opponentMoney,
+                (changed & POT) != 0 ? pot : state.pot,
+                (changed & AMOUNT_TO_CHECK) != 0 ? amountToCheck : state.amountToCheck);
+        result.sequence = base + 1;
+        return result;
+    }
+
+}
@@ -130,17 +130,35 @@ public class PokerWindow extends Stage {
 
     private class PokerClient extends Client {
 
+        private PokerGameState lastState; // The state rebuilt from the messages received so far.
+        private boolean resyncing; // Set while waiting for a full state after a delta could not be applied.
+
         /**
          * Connect to a PokerHub at a specified hostname and port number.
          */
         public PokerClient(String hubHostName, int hubPort) throws IOException {
-            super(hubHostName, hubPort);
+            super(hubHostName, hubPort, PokerHub.connectionOptions());
         }
 
         protected void messageReceived(final Object message) {
+            if (message instanceof PokerGameState) {
+                lastState = (PokerGameState) message;
+                resyncing = false;
+            } else if (message instanceof PokerStateDelta) {
+                PokerStateDelta delta = (PokerStateDelta) message;
+                if (lastState == null || delta.base != lastState.sequence) {
+                    if (!resyncing) {
+                        resyncing = true;
+                        send(PokerStateDelta.RESYNC);
+                    }
+                    return;
+                }
+                lastState = delta.applyTo(lastState);
+            }
+            final PokerGameState state = lastState;
             Platform.runLater(() -> {
-                if (message instanceof PokerGameState)
-                    newState((PokerGameState) message);
+                if (message instanceof PokerGameState || message instanceof PokerStateDelta)
+                    newState(state);
                 else if (message instanceof String) {
                     messageFromServer = (String) message;
                     drawBoard();
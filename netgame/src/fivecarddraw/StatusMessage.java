@@ -64,8 +64,11 @@ final class DisconnectMessage implements Serializable {
         this.message = message;
     }
 
+}
 
+/**
+ * Placed in an outgoing message queue as a signal to reset the output
+ * stream. It is never sent itself.
+ */
 class ResetSignal {
 }
-
-}
\ No newline at end of file